@@ -0,0 +1,215 @@
+package com.ljc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class JispAnalyser {
+
+    /* Builds the JispNode tree for a function body. scopes mirrors the frames the body
+       will run in, innermost first: the function's own parameter frame at the bottom and
+       one more for each LET or DOTIMES around the form being analysed. A symbol found in
+       scopes becomes a slot reference; any other symbol is global, unless the function is
+       a lambda whose closure might bind it. Forms with no node of their own are left to
+       their builtin, which then evaluates them exactly as eval would.
+       A form is in tail position when its value becomes the value of the function body:
+       the body itself, both branches of IF, the last form of PROGN, COND clause bodies
+       and the body of LET. Calls there are made by the caller's invoke loop. */
+
+    private final ArrayList<JispSymbol[]> scopes = new ArrayList<>();
+    private final boolean closure;
+    private final JispFunction owner;
+
+    private JispAnalyser(JispFunction func) {
+        owner = func;
+        scopes.add(func.getSlots());
+        closure = func.getClosure() != null;
+    }
+
+    static JispNode analyse(JispFunction func) {
+        return new JispAnalyser(func).analyse(func.getFunction(), true);
+    }
+
+    private JispNode analyse(Object form) {
+        return analyse(form, false);
+    }
+
+    private JispNode analyse(Object form, boolean tail) {
+        if (form instanceof JispSymbol)
+            return analyseSymbol((JispSymbol) form);
+        if (form instanceof JispCons)
+            return analyseList((JispCons) form, tail);
+        return new JispNode.Constant(form);
+    }
+
+    private JispNode[] analyseAll(List forms) {
+        return analyseAll(forms, false);
+    }
+
+    // tail applies to the last form only
+    private JispNode[] analyseAll(List forms, boolean tail) {
+        JispNode[] nodes = new JispNode[forms.size()];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = analyse(forms.get(i), tail && (i == nodes.length - 1));
+        return nodes;
+    }
+
+    private JispNode analyseSymbol(JispSymbol symbol) {
+        for (int depth = 0; depth < scopes.size(); depth++) {
+            JispSymbol[] names = scopes.get(depth);
+            // the last binding of a name in a frame is the one in effect
+            for (int slot = names.length - 1; slot >= 0; slot--) {
+                if (names[slot] == symbol)
+                    return new JispNode.LocalRef(depth, slot);
+            }
+        }
+        return closure ?
+                new JispNode.FreeRef(symbol) :
+                new JispNode.GlobalRef(symbol);
+    }
+
+    private JispNode analyseList(JispCons form, boolean tail) {
+        if (!(form.car() instanceof JispSymbol))
+            return new JispNode.Eval(form);
+
+        JispSymbol head = (JispSymbol) form.car();
+        JispCompiledFunction builtin = head.getBuiltin();
+        if (builtin == null)
+            return new JispNode.CallUser(head, analyseAll(new JispArguments(form)), form, tail);
+
+        JispNode node = analyseSpecial(head, form, tail);
+        return (node != null) ?
+                node :
+                new JispNode.CallBuiltin(builtin, form);
+    }
+
+    /* returns null when the builtin should handle the form itself, including when the
+       form is malformed, so that the builtin reports the error */
+    private JispNode analyseSpecial(JispSymbol head, JispCons form, boolean tail) {
+        switch (head.getName()) {
+            case "QUOTE":
+                return (form.length() == 2) ?
+                        new JispNode.Constant(form.nth(1)) :
+                        null;
+            case "IF":
+                return (form.length() == 4) ?
+                        new JispNode.If(analyse(form.nth(1)), analyse(form.nth(2), tail),
+                                analyse(form.nth(3), tail)) :
+                        null;
+            case "PROGN":
+                return new JispNode.Progn(analyseAll(new JispArguments(form), tail));
+            case "COND":
+                return analyseCond(form, tail);
+            case "SET":
+                return ((form.length() == 3) && (form.nth(1) instanceof JispSymbol)) ?
+                        new JispNode.Set((JispSymbol) form.nth(1), analyse(form.nth(2))) :
+                        null;
+            case "LET":
+                return analyseLet(form, tail);
+            case "DOTIMES":
+                return analyseDoTimes(form);
+            case "AREF":
+                return (form.length() == 3) ?
+                        new JispNode.Aref(analyse(form.nth(1)), analyse(form.nth(2))) :
+                        null;
+            case "SETF":
+                return analyseSetf(form);
+            case "+":
+                return analyseArithmetic(JispNode.Arithmetic.Op.ADD, form);
+            case "-":
+                return analyseArithmetic(JispNode.Arithmetic.Op.SUBTRACT, form);
+            case "*":
+                return analyseArithmetic(JispNode.Arithmetic.Op.MULTIPLY, form);
+            case "<":
+                return analyseArithmetic(JispNode.Arithmetic.Op.LESS, form);
+            case ">":
+                return analyseArithmetic(JispNode.Arithmetic.Op.MORE, form);
+            case "<=":
+                return analyseArithmetic(JispNode.Arithmetic.Op.LESS_EQUAL, form);
+            case ">=":
+                return analyseArithmetic(JispNode.Arithmetic.Op.MORE_EQUAL, form);
+            case "=":
+                return analyseArithmetic(JispNode.Arithmetic.Op.EQUAL, form);
+            default:
+                return null;
+        }
+    }
+
+    private JispNode analyseArithmetic(JispNode.Arithmetic.Op op, JispCons form) {
+        if (form.length() != 3)
+            return null;
+        return new JispNode.Arithmetic(op, analyse(form.nth(1)), analyse(form.nth(2)));
+    }
+
+    private JispNode analyseSetf(JispCons form) {
+        if ((form.length() != 3) || !(form.nth(1) instanceof JispCons))
+            return null;
+        JispCons place = (JispCons) form.nth(1);
+        if ((place.car() != JispSymbol.intern("AREF")) || (place.length() != 3))
+            return null;
+        return new JispNode.Aset(analyse(place.nth(1)), analyse(place.nth(2)), analyse(form.nth(2)));
+    }
+
+    private JispNode analyseCond(JispCons form, boolean tail) {
+        List clauses = new JispArguments(form);
+        JispNode[] tests = new JispNode[clauses.size()];
+        JispNode[] results = new JispNode[clauses.size()];
+        for (int i = 0; i < tests.length; i++) {
+            if (!(clauses.get(i) instanceof JispCons))
+                return null;
+            JispCons clause = (JispCons) clauses.get(i);
+            tests[i] = analyse(clause.car());
+            results[i] = (clause.length() > 1) ?
+                    analyse(clause.nth(1), tail) :
+                    null;
+        }
+        return new JispNode.Cond(tests, results);
+    }
+
+    private JispNode analyseLet(JispCons form, boolean tail) {
+        if ((form.length() < 2) || !((form.nth(1) == null) || (form.nth(1) instanceof JispCons)))
+            return null;
+        JispArrayList bindings = new JispArrayList(form.nth(1));
+        JispSymbol[] names = new JispSymbol[bindings.size()];
+        JispNode[] values = new JispNode[bindings.size()];
+        for (int i = 0; i < names.length; i++) {
+            Object binding = bindings.get(i);
+            if (binding instanceof JispSymbol) {
+                names[i] = (JispSymbol) binding;
+                values[i] = new JispNode.Constant(null);
+            } else if ((binding instanceof JispCons) && (((JispCons) binding).length() > 1) &&
+                    (((JispCons) binding).car() instanceof JispSymbol)) {
+                names[i] = (JispSymbol) ((JispCons) binding).car();
+                values[i] = analyse(((JispCons) binding).nth(1));
+            } else {
+                return null;
+            }
+        }
+
+        // like the builtin, only the first body form is evaluated
+        if (form.length() < 3)
+            return new JispNode.Let(names, values, new JispNode.Constant(null));
+        scopes.add(0, names);
+        try {
+            return new JispNode.Let(names, values, analyse(form.nth(2), tail));
+        } finally {
+            scopes.remove(0);
+        }
+    }
+
+    private JispNode analyseDoTimes(JispCons form) {
+        if ((form.length() < 3) || !(form.nth(1) instanceof JispCons))
+            return null;
+        JispCons spec = (JispCons) form.nth(1);
+        if ((spec.length() != 2) || !(spec.car() instanceof JispSymbol))
+            return null;
+        JispSymbol name = (JispSymbol) spec.car();
+        JispNode count = analyse(spec.nth(1));
+
+        scopes.add(0, new JispSymbol[]{name});
+        try {
+            return new JispNode.DoTimes(name, count, analyseAll(new JispArguments(form, 2)), owner);
+        } finally {
+            scopes.remove(0);
+        }
+    }
+}
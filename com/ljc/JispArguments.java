@@ -0,0 +1,45 @@
+package com.ljc;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+
+class JispArguments extends AbstractList<Object> {
+
+    /* Read-only view of the arguments of a form, ie. everything after the function name.
+       Builtins index into this instead of taking the form apart, so the form itself
+       (often part of a function body) is never modified and never needs copying.
+       Forms are short, so get walks the cells from the first argument each time. */
+
+    private final JispCons first;
+    private final int size;
+
+    JispArguments(JispCons form) {
+        this(form, 1);
+    }
+
+    // the elements of form from index from on
+    JispArguments(JispCons form, int from) {
+        first = (form != null) ? form.nthCdr(from) : null;
+        size = (first != null) ? first.length() : 0;
+    }
+
+    @Override
+    public Object get(int index) {
+        if ((index < 0) || (index >= size))
+            throw new IndexOutOfBoundsException("no argument " + index);
+        return first.nth(index);
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return (first != null) ?
+                first.iterator() :
+                Collections.emptyIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ljc;
+
+public class JispArithmeticBenchmark {
+
+    /* Throughput of the + builtin on (+ a b), with a and b global fixnums and then doubles,
+       which take the two-operand fast paths, and on (+ a b c), which takes the general
+       path. Each form is evaluated calls times a round, straight from here, so what is
+       timed is the builtin's dispatch and the lookups of its operands, and PROGN's.
+       usage: JispArithmeticBenchmark [calls [rounds]] */
+
+    private static final String PROGRAM = "(set a 3) (set b 4) (set c 5) (set x 1.5) (set y 2.25)";
+
+    public static void main(String... args) {
+        long calls = JispBenchmark.argument(args, 0, 10_000_000);
+        int rounds = (int) JispBenchmark.argument(args, 1, 5);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispInterp interp = JispBenchmark.load(PROGRAM);
+        System.out.printf("%,d evaluations each, best of %d rounds%n", calls, rounds);
+        run("(+ a b) fixnums", "(+ a b)", "7", interp, calls, rounds);
+        run("(+ x y) doubles", "(+ x y)", "3.75", interp, calls, rounds);
+        run("(+ a b c)", "(+ a b c)", "12", interp, calls, rounds);
+    }
+
+    private static void run(String label, String text, String expected, JispInterp interp, long calls,
+                            int rounds) {
+        long best = JispBenchmark.best(interp, text, expected, calls, rounds);
+        System.out.printf("  %-16s %6d ms, %,13.0f calls/s%n", label, best / 1_000_000, calls * 1e9 / best);
+    }
+}
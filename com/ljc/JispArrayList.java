@@ -1,32 +1,24 @@
 package com.ljc;
 
 import java.util.ArrayList;
-import java.util.Collection;
 
 class JispArrayList extends ArrayList {
 
-    JispArrayList() {
-    }
+    /* A Java list to collect the elements of a Lisp list in, for code that builds a list
+       front to back (such as the reader) or hands one to Java. Lisp code never sees one:
+       toCons makes the cons cells, and the list constructor copies a cons list back out. */
 
-    JispArrayList(Object first) {
-        add(0, first);
-    }
-
-    JispArrayList(Object first, Object second) {
-        add(0, first);
-        if (second != null)
-            if (second instanceof Collection)
-                addAll((Collection) second);
-            else
-                add(second);
+    JispArrayList() {
     }
 
-    Object car() {
-        return get(0);
+    // the elements of a cons list, which may be nil
+    JispArrayList(Object list) {
+        for (Object item : JispCons.elements(list))
+            add(item);
     }
 
-    Object cdr() {
-        return subList(1, size());
+    JispCons toCons() {
+        return JispCons.fromList(this);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package com.ljc;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+public final class JispArrays {
+
+    /* One-dimensional arrays, as made by MAKE-ARRAY. An array is a plain Java array whose
+       class follows the :element-type it was made with: fixnum gives a long[], double-float
+       (or float) a double[], (signed-byte n) an int[] for n up to 32 and a long[] up to 64,
+       and anything else an Object[] that holds any value. Elements of the primitive arrays
+       are stored unboxed and only boxed again when read, so a numeric dataset costs one
+       slot per element rather than an object.
+       Storing something an array cannot hold is an error; exact numbers stored into a
+       double[] are converted to floats. Errors are reported here, like the builtins do,
+       and give nil. Some methods are public for compiled code, see JispCompiler. */
+
+    private JispArrays() {
+    }
+
+    static boolean isArray(Object x) {
+        return (x instanceof Object[]) || (x instanceof long[]) || (x instanceof double[]) ||
+                (x instanceof int[]);
+    }
+
+    // an array of size elements of the given element type, all set to initial, or to 0 or nil
+    static Object make(Object type, int size, Object initial) {
+        Object array = Array.newInstance(elementType(type), size);
+        if (initial != null)
+            return fill(array, initial);
+        return array;
+    }
+
+    // the Java element type for a Lisp element type
+    static Class elementType(Object type) {
+        if (type instanceof JispSymbol) {
+            switch (((JispSymbol) type).getName()) {
+                case "FIXNUM":
+                    return long.class;
+                case "DOUBLE-FLOAT":
+                case "FLOAT":
+                    return double.class;
+                default:
+                    return Object.class;
+            }
+        }
+        if ((type instanceof JispCons) && (((JispCons) type).length() == 2) &&
+                (((JispCons) type).car() == JispSymbol.intern("SIGNED-BYTE")) &&
+                (((JispCons) type).nth(1) instanceof Long)) {
+            long bits = (Long) ((JispCons) type).nth(1);
+            if ((bits > 0) && (bits <= 32))
+                return int.class;
+            if ((bits > 0) && (bits <= 64))
+                return long.class;
+        }
+        return Object.class;
+    }
+
+    static int length(Object array) {
+        if (array instanceof Object[])
+            return ((Object[]) array).length;
+        if (array instanceof long[])
+            return ((long[]) array).length;
+        if (array instanceof double[])
+            return ((double[]) array).length;
+        return ((int[]) array).length;
+    }
+
+    public static Object aref(Object array, Object index) {
+        if (!isArray(array)) {
+            System.err.println("ERROR: AREF requires an array");
+            return null;
+        }
+        if (!inRange(array, index))
+            return null;
+        int i = (int) (long) (Long) index;
+        if (array instanceof double[])
+            return ((double[]) array)[i];
+        if (array instanceof long[])
+            return JispNumbers.box(((long[]) array)[i]);
+        if (array instanceof int[])
+            return JispNumbers.box(((int[]) array)[i]);
+        return ((Object[]) array)[i];
+    }
+
+    // (setf (aref array index) value), giving value
+    public static Object aset(Object array, Object index, Object value) {
+        if (!isArray(array)) {
+            System.err.println("ERROR: AREF requires an array");
+            return null;
+        }
+        if (!inRange(array, index) || !canHold(array, value))
+            return null;
+        int i = (int) (long) (Long) index;
+        if (array instanceof double[])
+            ((double[]) array)[i] = ((Number) value).doubleValue();
+        else if (array instanceof long[])
+            ((long[]) array)[i] = (Long) value;
+        else if (array instanceof int[])
+            ((int[]) array)[i] = (int) (long) (Long) value;
+        else
+            ((Object[]) array)[i] = value;
+        return value;
+    }
+
+    private static boolean inRange(Object array, Object index) {
+        if (!(index instanceof Long)) {
+            System.err.println("ERROR: index parameter must be an integer");
+            return false;
+        }
+        long i = (Long) index;
+        if ((i < 0) || (i >= length(array))) {
+            System.err.println("ERROR: index " + i + " out of range for array of length " + length(array));
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean canHold(Object array, Object value) {
+        boolean fits;
+        if (array instanceof double[])
+            fits = JispNumbers.isNumber(value);
+        else if (array instanceof long[])
+            fits = value instanceof Long;
+        else if (array instanceof int[])
+            fits = (value instanceof Long) && ((Long) value == (int) (long) (Long) value);
+        else
+            fits = true;
+        if (!fits)
+            System.err.println("ERROR: " + JispCons.print(value) + " does not fit in an array of " +
+                    array.getClass().getComponentType());
+        return fits;
+    }
+
+    // sets every element to value, giving the array
+    static Object fill(Object array, Object value) {
+        if ((length(array) == 0) || !canHold(array, value))
+            return array;
+        if (array instanceof double[])
+            Arrays.fill((double[]) array, ((Number) value).doubleValue());
+        else if (array instanceof long[])
+            Arrays.fill((long[]) array, (Long) value);
+        else if (array instanceof int[])
+            Arrays.fill((int[]) array, (int) (long) (Long) value);
+        else
+            Arrays.fill((Object[]) array, value);
+        return array;
+    }
+
+    // the elements of a list or an array, as DOLIST walks them
+    public static Iterable<Object> elements(Object sequence) {
+        if (!isArray(sequence))
+            return JispCons.elements(sequence);
+        if (sequence instanceof Object[])
+            return Arrays.asList((Object[]) sequence);
+        return new AbstractList<Object>() {
+            @Override
+            public Object get(int index) {
+                return aref(sequence, JispNumbers.box(index));
+            }
+
+            @Override
+            public int size() {
+                return length(sequence);
+            }
+        };
+    }
+
+    // arrays print as #(1 2 3)
+    static String print(Object array) {
+        StringBuilder out = new StringBuilder("#(");
+        String separator = "";
+        for (Object x : elements(array)) {
+            out.append(separator).append(JispCons.print(x));
+            separator = " ";
+        }
+        return out.append(')').toString();
+    }
+}
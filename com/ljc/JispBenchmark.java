@@ -0,0 +1,62 @@
+package com.ljc;
+
+import java.util.ArrayList;
+
+final class JispBenchmark {
+
+    /* What the Jisp*Benchmark mains share: reading their arguments, running on a thread with
+       a large stack, as Main runs the interpreter, and timing over several rounds so the JIT
+       has settled, of which the best is reported. Results are checked by their printed
+       form, which does not depend on the classes numbers and lists are made of. */
+
+    private static final long STACK_SIZE = 1L << 30;
+
+    private JispBenchmark() {
+    }
+
+    // argument i as a number, or otherwise when there are not that many
+    static long argument(String[] args, int i, long otherwise) {
+        return (args.length > i) ?
+                Long.parseLong(args[i]) :
+                otherwise;
+    }
+
+    // runs body on a thread with a large stack, since interpreted calls recurse on it, and waits
+    static void onLargeStack(Runnable body) throws InterruptedException {
+        startOnLargeStack(body, "jisp").join();
+    }
+
+    // starts body on a thread with a large stack without waiting, for several to run at once
+    static Thread startOnLargeStack(Runnable body, String name) {
+        Thread worker = new Thread(null, body, name, STACK_SIZE);
+        worker.start();
+        return worker;
+    }
+
+    // a new interpreter that has evaluated program
+    static JispInterp load(String program) {
+        JispInterp interp = new JispInterp();
+        for (Object form : (ArrayList) new JispParser().interpret(program))
+            interp.eval(form);
+        return interp;
+    }
+
+    /* the best of rounds rounds, in nanoseconds, each evaluating text in interp reps times;
+       the last result of a round has to print as expected, unless that is null. text is
+       evaluated inside a PROGN: a call to a defined function made at top level can use up
+       its form, and every rep evaluates the same one again */
+    static long best(JispInterp interp, String text, String expected, long reps, int rounds) {
+        Object form = ((ArrayList) new JispParser().interpret("(progn " + text + ")")).get(0);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            Object result = null;
+            long start = System.nanoTime();
+            for (long i = 0; i < reps; i++)
+                result = interp.eval(form);
+            best = Math.min(best, System.nanoTime() - start);
+            if ((expected != null) && !expected.equals(String.valueOf(result)))
+                throw new IllegalStateException(text + " gave " + result + ", expected " + expected);
+        }
+        return best;
+    }
+}
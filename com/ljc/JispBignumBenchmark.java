@@ -0,0 +1,43 @@
+package com.ljc;
+
+import java.math.BigInteger;
+
+public class JispBignumBenchmark {
+
+    /* The numeric tower on either side of the fixnum limit. (fact 12) and (fib 20) stay
+       within 32 bits, so they can be timed before the tower as well, to show the common
+       small-integer path has not got slower. (fact 1000) goes over to bignums after twenty
+       steps and ends with 2568 digits, checked against BigInteger.
+       usage: JispBignumBenchmark [reps [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun fact (n) (if (= n 0) 1 (* n (fact (- n 1)))))" +
+            "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))";
+
+    public static void main(String... args) throws InterruptedException {
+        long reps = JispBenchmark.argument(args, 0, 500);
+        int rounds = (int) JispBenchmark.argument(args, 1, 10);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispBenchmark.onLargeStack(() -> {
+            JispInterp interp = JispBenchmark.load(PROGRAM);
+            System.out.printf("best of %d rounds%n", rounds);
+            run("(fact 12)", factorial(12), interp, reps * 50, rounds);
+            run("(fib 20)", "6765", interp, reps, rounds);
+            run("(fact 1000)", factorial(1000), interp, reps, rounds);
+        });
+    }
+
+    private static void run(String text, String expected, JispInterp interp, long reps, int rounds) {
+        long best = JispBenchmark.best(interp, text, expected, reps, rounds);
+        System.out.printf("  %-11s x %5d: %5d ms, %8.1f us each, %d digits%n", text, reps, best / 1_000_000,
+                best / 1e3 / reps, expected.length());
+    }
+
+    private static String factorial(int n) {
+        BigInteger f = BigInteger.ONE;
+        for (int i = 2; i <= n; i++)
+            f = f.multiply(BigInteger.valueOf(i));
+        return f.toString();
+    }
+}
@@ -3,427 +3,491 @@ package com.ljc;
 import com.ljc.JispCompiler.CompileFlags;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.DoublePredicate;
-import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static java.lang.Math.*;
 import static java.util.stream.Collectors.toCollection;
 
 class JispBuiltinFunction {
 
-    static Object jisp_add(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    static Object jisp_add(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return JispNumbers.add((long) (Long) a, (long) (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return (Double) a + (Double) b;
+            return add(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
+        return add(evalArguments(args, context));
+    }
+
+    private static Object add(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be added");
             return null;
         }
 
-        if (vals.stream().anyMatch(i -> i instanceof Double))
-            return vals.stream()
-                    .mapToDouble(f -> ((Number) f).doubleValue()).sum();
-        else
-            return vals.stream()
-                    .mapToInt(v -> (Integer) v).sum();
+        Object sum = JispNumbers.box(0);
+        for (Object v : vals)
+            sum = JispNumbers.add(sum, v);
+        return sum;
     }
 
-    static Object jisp_divide(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    static Object jisp_divide(JispCons items, JispInterp context) {
+        /* dividing integers gives an integer when they divide evenly and a ratio otherwise,
+           only floats give a float */
+
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return JispNumbers.divide(a, b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return (Double) a / (Double) b;
+            return divide(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
+        return divide(evalArguments(args, context));
+    }
+
+    private static Object divide(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be divided");
             return null;
         }
 
         Object first = vals.remove(0);
-        if (vals.isEmpty()) {
-            return (first instanceof Double) ?
-                    (Double) first :
-                    (Integer) first;
+        if (vals.isEmpty())
+            return first;
+
+        Object quotient = first;
+        for (Object v : vals)
+            quotient = JispNumbers.divide(quotient, v);
+        return quotient;
+    }
+
+    static Object jisp_equals(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth(((Long) a).longValue() == (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth(((Double) a).doubleValue() == (Double) b);
+            return equal(pair(a, b));
         }
 
-        if ((first instanceof Double) || vals.stream().anyMatch(i -> i instanceof Double))
-            return vals.stream()
-                    .mapToDouble(f -> ((Number) f).doubleValue())
-                    .reduce(((Number) first).doubleValue(), (a, b) -> a / b);
-        else
-            return vals.stream()
-                    .mapToInt(v -> (Integer) v)
-                    .reduce((Integer) first, (a, b) -> a / b);
+        List args = new JispArguments(items);
+        return equal(evalArguments(args, context));
     }
 
-    static Object jisp_equals(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    private static Object equal(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        Double match = ((Number) vals.remove(0)).doubleValue();
-        DoublePredicate equ = match::equals;
-        return vals.stream()
-                .mapToDouble(f -> ((Number) f).doubleValue())
-                .allMatch(equ) ?
-                "T" :
-                null;
+        Object match = vals.remove(0);
+        for (Object v : vals) {
+            if (!JispNumbers.numEquals(match, v))
+                return null;
+        }
+        return JispSymbol.T;
     }
 
-    static Object jisp_lessthan(ArrayList items, JispInterp context) {
+    static Object jisp_lessthan(JispCons items, JispInterp context) {
         /* Check if all provided numbers are in sorted ascending order */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() < 1) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth((Long) a < (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth((Double) a < (Double) b);
+            return ascending(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
+        if (args.size() < 1) {
             System.err.println("ERROR: operation requires at least one number");
             return null;
         }
 
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+        return ascending(evalArguments(args, context));
+    }
+
+    private static Object ascending(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        double[] prev = new double[1];
-        prev[0] = ((Number) vals.remove(0)).doubleValue();
-
-        boolean res = vals.stream()
-                .mapToDouble(f -> ((Number) f).doubleValue()) // compare all as doubles
-                .allMatch(f -> {
-                    boolean b = f > prev[0];
-                    prev[0] = f;
-                    return b;
-                });
-
-        return res ?
-                "T" :
-                null;
+        for (int i = 1; i < vals.size(); i++) {
+            if (!JispNumbers.lessThan(vals.get(i - 1), vals.get(i)))
+                return null;
+        }
+        return JispSymbol.T;
     }
 
-    static Object jisp_lessthanorequal(ArrayList items, JispInterp context) {
+    static Object jisp_lessthanorequal(JispCons items, JispInterp context) {
         /* <= function compares numbers according to "less than or equal" predicate.
         Each (overlapping) pair of the numbers is compared by it.
         The result is true if all compared pairs satisfy comparison. */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() < 1) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth((Long) a <= (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth((Double) a <= (Double) b);
+            return nonDescending(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
+        if (args.size() < 1) {
             System.err.println("ERROR: operation requires at least one number");
             return null;
         }
 
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+        return nonDescending(evalArguments(args, context));
+    }
+
+    private static Object nonDescending(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        double[] prev = new double[1];
-        prev[0] = ((Number) vals.remove(0)).doubleValue();
+        for (int i = 1; i < vals.size(); i++) {
+            if (!JispNumbers.lessOrEqual(vals.get(i - 1), vals.get(i)))
+                return null;
+        }
+        return JispSymbol.T;
+    }
 
-        boolean res = vals.stream()
-                .mapToDouble(f -> ((Number) f).doubleValue()) // compare all as doubles
-                .allMatch(f -> {
-                    boolean b = f >= prev[0];
-                    prev[0] = f;
-                    return b;
-                });
+    static Object jisp_mult(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return JispNumbers.multiply((long) (Long) a, (long) (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return (Double) a * (Double) b;
+            return multiply(pair(a, b));
+        }
 
-        return res ?
-                "T" :
-                null;
+        List args = new JispArguments(items);
+        return multiply(evalArguments(args, context));
     }
 
-    static Object jisp_mult(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    private static Object multiply(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be multiplied");
             return null;
         }
 
-        if (vals.stream().anyMatch(i -> i instanceof Double))
-            return vals.stream()
-                    .mapToDouble(f -> ((Number) f).doubleValue())
-                    .reduce(1.0, (a, b) -> a * b);
-        else
-            return vals.stream()
-                    .mapToInt(v -> (Integer) v)
-                    .reduce(1, (a, b) -> a * b);
+        Object product = JispNumbers.box(1);
+        for (Object v : vals)
+            product = JispNumbers.multiply(product, v);
+        return product;
     }
 
-    static Object jisp_morethan(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
+    static Object jisp_morethan(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth((Long) a > (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth((Double) a > (Double) b);
+            return descending(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
 
-        if (items.size() < 1) {
+        if (args.size() < 1) {
             System.err.println("ERROR: operation requires at least one number");
             return null;
         }
 
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+        return descending(evalArguments(args, context));
+    }
+
+    private static Object descending(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        double[] prev = new double[1];
-        prev[0] = ((Number) vals.remove(0)).doubleValue();
-
-        boolean res = vals.stream()
-                .mapToDouble(f -> ((Number) f).doubleValue()) // compare all as doubles
-                .allMatch(f -> {
-                    boolean b = f < prev[0];
-                    prev[0] = f;
-                    return b;
-                });
-
-        return res ?
-                "T" :
-                null;
+        for (int i = 1; i < vals.size(); i++) {
+            if (!JispNumbers.lessThan(vals.get(i), vals.get(i - 1)))
+                return null;
+        }
+        return JispSymbol.T;
     }
 
-    static Object jisp_morethanorequal(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
+    static Object jisp_morethanorequal(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth((Long) a >= (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth((Double) a >= (Double) b);
+            return nonAscending(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
 
-        if (items.size() < 1) {
+        if (args.size() < 1) {
             System.err.println("ERROR: operation requires at least one number");
             return null;
         }
 
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+        return nonAscending(evalArguments(args, context));
+    }
+
+    private static Object nonAscending(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        double[] prev = new double[1];
-        prev[0] = ((Number) vals.remove(0)).doubleValue();
-
-        boolean res = vals.stream()
-                .mapToDouble(f -> ((Number) f).doubleValue()) // compare all as doubles
-                .allMatch(f -> {
-                    boolean b = f <= prev[0];
-                    prev[0] = f;
-                    return b;
-                });
-
-        return res ?
-                "T" :
-                null;
+        for (int i = 1; i < vals.size(); i++) {
+            if (!JispNumbers.lessOrEqual(vals.get(i), vals.get(i - 1)))
+                return null;
+        }
+        return JispSymbol.T;
     }
 
-    static Object jisp_negateequals(ArrayList items, JispInterp context) {
+    static Object jisp_negateequals(JispCons items, JispInterp context) {
         /* /= function compares numbers according to "equal" predicate.
         Result is true if no two numbers are equal to each other,
         otherwise result is false. Note that only two argument version
         result is negation of = function, that is (/= a b) is same as (not (= a b)). */
 
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return truth(((Long) a).longValue() != (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return truth(((Double) a).doubleValue() != (Double) b);
+            return notEqual(pair(a, b));
+        }
+
+        List args = new JispArguments(items);
+        return notEqual(evalArguments(args, context));
+    }
+
+    private static Object notEqual(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
 
-        int v = vals.size();
-        for (int i = 0; i < v; i++) {
-            double cur = ((Number) vals.remove(0)).doubleValue();
-            DoublePredicate equ = t -> t == cur;
-
-            // needs to think equivalent ints and doubles are the same, eg 2 and 2.0
-            long t = vals.stream()
-                    .mapToDouble(f -> ((Number) f).doubleValue())
-                    .filter(equ)
-                    .count();
-            if (t > 0)
-                return null;
+        // needs to think equivalent integers and floats are the same, eg 2 and 2.0
+        for (int i = 0; i < vals.size(); i++) {
+            for (int j = i + 1; j < vals.size(); j++) {
+                if (JispNumbers.numEquals(vals.get(i), vals.get(j)))
+                    return null;
+            }
         }
-        return "T";
+        return JispSymbol.T;
     }
 
-    static Object jisp_oneplus(ArrayList items, JispInterp context) {
-        if (items.size() != 2) {
-            System.err.println("ERROR: incorrect number of parameters, expected 2 got " + Integer.toString(items.size()));
+    static Object jisp_oneplus(JispCons items, JispInterp context) {
+        if (items.length() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " + Integer.toString(items.length()));
             return null;
         }
-        items.add(1);
-        return jisp_add(items, context);
+        Object val = context.eval(items.nth(1));
+        if (val instanceof Long)
+            return JispNumbers.add((long) (Long) val, 1);
+        if (JispNumbers.isNumber(val))
+            return JispNumbers.add(val, JispNumbers.box(1));
+        System.err.println("ERROR: only numbers can be added");
+        return null;
     }
 
-    static Object jisp_oneminus(ArrayList items, JispInterp context) {
-        if (items.size() != 2) {
-            System.err.println("ERROR: incorrect number of parameters, expected 2 got " + Integer.toString(items.size()));
+    static Object jisp_oneminus(JispCons items, JispInterp context) {
+        if (items.length() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " + Integer.toString(items.length()));
             return null;
         }
-        items.add(1);
-        return jisp_subtract(items, context);
+        Object val = context.eval(items.nth(1));
+        if (val instanceof Long)
+            return JispNumbers.subtract((long) (Long) val, 1);
+        if (JispNumbers.isNumber(val))
+            return JispNumbers.subtract(val, JispNumbers.box(1));
+        System.err.println("ERROR: only numbers can be subtracted");
+        return null;
+    }
+
+    static Object jisp_subtract(JispCons items, JispInterp context) {
+        if (items.length() == 3) { // two operands, by far the most common case
+            Object a = context.eval(items.nth(1));
+            Object b = context.eval(items.nth(2));
+            if ((a instanceof Long) && (b instanceof Long))
+                return JispNumbers.subtract((long) (Long) a, (long) (Long) b);
+            if ((a instanceof Double) && (b instanceof Double))
+                return (Double) a - (Double) b;
+            return subtract(pair(a, b));
+        }
 
+        List args = new JispArguments(items);
+        return subtract(evalArguments(args, context));
     }
 
-    static Object jisp_subtract(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    private static Object subtract(ArrayList vals) {
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be subtracted");
             return null;
         }
 
         Object first = vals.remove(0);
-        if (vals.isEmpty()) {
-            return (first instanceof Double) ?
-                    -(Double) first :
-                    -(Integer) first;
+        if (vals.isEmpty())
+            return JispNumbers.negate(first);
+
+        Object difference = first;
+        for (Object v : vals)
+            difference = JispNumbers.subtract(difference, v);
+        return difference;
+    }
+
+    private static boolean numbers(ArrayList vals) {
+        for (Object v : vals) {
+            if (!JispNumbers.isNumber(v))
+                return false;
         }
+        return true;
+    }
 
-        if ((first instanceof Double) || vals.stream().anyMatch(i -> i instanceof Double))
-            return vals.stream()
-                    .mapToDouble(f -> ((Number) f).doubleValue())
-                    .reduce(((Number) first).doubleValue(), (a, b) -> a - b);
-        else
-            return vals.stream()
-                    .mapToInt(v -> (Integer) v)
-                    .reduce((Integer) first, (a, b) -> a - b);
+    // the arguments of a form evaluated in order, into a list the n-ary paths may consume
+    private static ArrayList evalArguments(List args, JispInterp context) {
+        ArrayList vals = new ArrayList(args.size());
+        for (Object arg : args)
+            vals.add(context.eval(arg));
+        return vals;
+    }
+
+    // a mutable list of two evaluated operands, for the n-ary paths of the arithmetic builtins
+    private static ArrayList pair(Object a, Object b) {
+        ArrayList vals = new ArrayList(2);
+        vals.add(a);
+        vals.add(b);
+        return vals;
+    }
+
+    private static Object truth(boolean b) {
+        return b ?
+                JispSymbol.T :
+                null;
     }
 
-    static Object AND(ArrayList items, JispInterp context) {
+    static Object AND(JispCons items, JispInterp context) {
         // Logical AND, Value from the first form that decides result is returned
-        items.remove(0); // 0th parm == function name
-        if (items.stream()
-                .map(context::eval)
-                .anyMatch(Objects::isNull))
-            return null;
-        else {
-            int itemsSize = items.size() - 1;
-            return context.eval(items.get(itemsSize));
+        List args = new JispArguments(items);
+        Object val = null;
+        for (Object arg : args) {
+            val = context.eval(arg);
+            if (val == null)
+                return null;
         }
+        return val;
     }
 
-    static Object ATOM(ArrayList items, JispInterp context) {
+    static Object ATOM(JispCons items, JispInterp context) {
         // returns true if the argument is not a cons cell, otherwise it returns false
-        items.remove(0); // 0th parm == function name
-        if (items.size() > 1) {
-            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(items.size()));
+        List args = new JispArguments(items);
+        if (args.size() > 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(args.size()));
             return null;
         }
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if ((vals.get(0) instanceof ArrayList)) {
-            return ((ArrayList) vals.get(0)).isEmpty() ?
-                    "T" :
-                    null;
-        }
-        return "T";
+        return (context.eval(args.get(0)) instanceof JispCons) ?
+                null :
+                JispSymbol.T;
     }
 
-    static Object OR(ArrayList items, JispInterp context) {
+    static Object OR(JispCons items, JispInterp context) {
         // evaluates forms, returns first item which does not eval to nil
-        items.remove(0); // 0th parm == function name
+        List args = new JispArguments(items);
 
-        for (int i = 0; i < items.size(); i++) {
-            items.set(i, context.eval(items.get(i)));
-            if (items.get(i) != null)
-                return items.get(i);
+        for (Object arg : args) {
+            Object val = context.eval(arg);
+            if (val != null)
+                return val;
         }
         return null;
     }
 
-    static Object NOT(ArrayList items, JispInterp context) {
+    static Object NOT(JispCons items, JispInterp context) {
         // if parameter is null, return True; else return null
-        items.remove(0); // 0th parm == function name
-        return (context.eval(items.get(0)) == null) ? true : null;
+        List args = new JispArguments(items);
+        return (context.eval(args.get(0)) == null) ? true : null;
     }
 
-    static Object CAR(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() > 1) {
-            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(items.size()));
+    static Object CAR(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() > 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(args.size()));
             return null;
         }
-        Object cons = context.eval(items.get(0));
-        if (cons instanceof JispArrayList)
-            return context.eval(((JispArrayList) cons).car());
-        if (cons instanceof ArrayList) {
-            if (((ArrayList) cons).isEmpty())
-                return null;
-            return new JispArrayList(((ArrayList) cons).get(0));
+        Object cons = context.eval(args.get(0));
+        if (cons == null)
+            return null;
+        if (!(cons instanceof JispCons)) {
+            System.err.println("ERROR: CAR requires cons parameter");
+            return null;
         }
-        return null;
+        return ((JispCons) cons).car();
     }
 
-    static Object FIRST(ArrayList items, JispInterp context) {
+    static Object FIRST(JispCons items, JispInterp context) {
         return CAR(items, context);
     }
 
-    static Object CDR(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() > 1) {
-            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(items.size()));
+    static Object CDR(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() > 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " + Integer.toString(args.size()));
             return null;
         }
-        Object cons = context.eval(items.get(0));
+        Object cons = context.eval(args.get(0));
         if (cons == null)
             return null;
-        if ((cons instanceof ArrayList) && (((ArrayList) cons).isEmpty()))
-            return null;
-        if (!(cons instanceof ArrayList)) {
+        if (!(cons instanceof JispCons)) {
             System.err.println("ERROR: CDR requires cons parameter");
             return null;
         }
-        if (cons instanceof JispArrayList)
-            return ((JispArrayList) cons).cdr();
-        ((ArrayList) cons).remove(0);
-        return new JispArrayList(cons);
+        return ((JispCons) cons).cdr();
     }
 
-    static Object REST(ArrayList items, JispInterp context) {
+    static Object REST(JispCons items, JispInterp context) {
         return CDR(items, context);
     }
 
-    static Object COMPILE(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
+    static Object COMPILE(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
 
         JispCompiler com = new JispCompiler();
         Object func;
         String name;
 
-        if (items.get(0) instanceof String) {
-            name = items.get(0).toString().toUpperCase();
-            func = context.getSymbols().get(name);
+        if (args.get(0) instanceof JispSymbol) {
+            name = ((JispSymbol) args.get(0)).getName();
+            func = context.getFunction((JispSymbol) args.get(0));
         } else {
-            Object ev = context.eval(items.get(0));
+            Object ev = context.eval(args.get(0));
             if (ev instanceof JispFunction) {
                 name = null;
                 func = (JispFunction) ev;
@@ -434,17 +498,17 @@ class JispBuiltinFunction {
         }
 
         EnumSet<CompileFlags> options = EnumSet.noneOf(CompileFlags.class);
-        while (!items.isEmpty()) {
-            Object x = items.remove(0);
-            if (x instanceof String) {
-                switch ((String) x) {
-                    case "debug":
+        for (int i = 1; i < args.size(); i++) {
+            Object x = args.get(i);
+            if (x instanceof JispSymbol) {
+                switch (((JispSymbol) x).getName()) {
+                    case "DEBUG":
                         options.add(CompileFlags.DEBUG);
                         break;
 
-                    case "name":
+                    case "NAME":
                         options.add(CompileFlags.PATH);
-                        name = items.remove(0).toString();
+                        name = args.get(++i).toString();
                         break;
 
                     default:
@@ -452,141 +516,109 @@ class JispBuiltinFunction {
                 }
             }
         }
-        if (func instanceof JispFunction)
+        if (func instanceof JispFunction) {
             return com.compile(name, (JispFunction) func, options);
-        else {
-            System.err.println("ERROR: " + items.get(0) + " not an interpreted function\n");
+        } else {
+            System.err.println("ERROR: " + args.get(0) + " not an interpreted function\n");
             return null;
         }
     }
 
-    static Object COND(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        System.out.println(items);
-
-        int i = items.size() - 1;
-        System.out.println("bindings size: " + i);
+    static Object COND(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
 
-        while (i >= 0) {
-            System.out.println(items);
-            ArrayList variant = (ArrayList) items.remove(0);
-            int variantSize = variant.size();
+        for (Object clause : args) {
+            JispCons variant = (JispCons) clause;
+            int variantSize = variant.length();
 
-            if ((context.eval(variant.get(0)) != null)) {
-                return context.eval(variant.get((variantSize > 1) ? 1 : 0));
-            }
-            i--;
+            // a clause with no body gives its test's value, which is not evaluated again
+            Object test = context.eval(variant.car());
+            if (test != null)
+                return (variantSize > 1) ? context.eval(variant.nth(1)) : test;
         }
         return null;
     }
 
-    static Object CONS(ArrayList items, JispInterp context) {
+    static Object CONS(JispCons items, JispInterp context) {
         /* A list is a series of cons cells, linked together so that the CDR
         slot of each cons cell holds either the next cons cell or the empty list.
         The empty list == the symbol nil. */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() < 2) {
+        List args = new JispArguments(items);
+        if (args.size() < 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        JispArrayList ret = new JispArrayList();
-        Object cons0 = context.eval(items.get(0));
-        Object cons1 = context.eval(items.get(1));
+        Object cons0 = context.eval(args.get(0));
+        Object cons1 = context.eval(args.get(1));
 
-        if (cons1 == null) {
-            ret.add(cons0);
-            return ret;
-        }
-        if ((cons1 instanceof ArrayList)) {
-            // b.add(0, A), return B
-            ((ArrayList) cons1).add(0, cons0);
-            return cons1;
-        }
-        ret.add(cons0);
-        //if (!(cons1 == null))
-        ret.add(cons1);
-        return ret;
+        // cons1 is shared, not copied: cells are never modified
+        return new JispCons(cons0, cons1);
     }
 
-    static Object COS(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object COS(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        return StrictMath.cos((items.get(0) instanceof Double) ?
-                (Double) items.get(0) :
-                (Integer) items.get(0));
+        return StrictMath.cos(((Number) context.eval(args.get(0))).doubleValue());
     }
 
-    static Object copy(Object f) {
-        if (f instanceof ArrayList) {
-            ArrayList list = (ArrayList) f;
-            return list.stream()
-                    .map(JispBuiltinFunction::copy)
-                    .collect(toCollection(ArrayList::new));
-        }
-        return f;
-    }
-
-    static Object DEFUN(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 3) {
+    static Object DEFUN(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 3) {
             System.err.println("ERROR: incorrect number of parameters, expected 3 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        String symbol;
-        if (items.get(0) instanceof String)
-            symbol = ((String) items.get(0)).toUpperCase();
+        JispSymbol symbol;
+        if (args.get(0) instanceof JispSymbol)
+            symbol = (JispSymbol) args.get(0);
         else {
-            System.err.println("ERROR: " + items.get(0).toString() + "not a string");
-            return null;
-        }
-        try {
-            Class direct = Class.forName(symbol, true, JispCompiler.loader);
-            System.err.println("ERROR: cannot redefine a function after compile");
+            System.err.println("ERROR: " + args.get(0).toString() + "not a string");
             return null;
-        } catch (ClassNotFoundException ignored) {
         }
-        ArrayList<Object> all = (ArrayList<Object>) items.get(1);
-        ArrayList<String> parm = new ArrayList<>();
-        ArrayList<String> optional = new ArrayList<>();
+        Iterable<Object> all = JispCons.elements(args.get(1));
+        ArrayList<JispSymbol> parm = new ArrayList<>();
+        ArrayList<JispSymbol> optional = new ArrayList<>();
 
         boolean opt = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i) instanceof ArrayList) {
-                String name = (String) ((ArrayList) all.get(i)).get(0);
-                Object val = ((ArrayList) all.get(i)).get(1);
-                context.getSymbols().put(name.toUpperCase(), val);
-                all.set(i, name);
+        for (Object param : all) {
+            if (param instanceof JispCons) {
+                JispSymbol name = (JispSymbol) ((JispCons) param).car();
+                Object val = ((JispCons) param).nth(1);
+                context.setFunction(name, val);
+                param = name;
             }
 
-/*          if (all.get(i).equals("&rest")) {
+/*          if (param.equals("&rest")) {
 
-            } else if (all.get(i).equals("&key")) {
+            } else if (param.equals("&key")) {
 */
-            if (all.get(i).equals("&optional")) {
+            if (param == JispSymbol.OPTIONAL) {
                 opt = true;
             } else if (!opt) {
-                parm.add((String) all.get(i));
+                parm.add((JispSymbol) param);
             } else {
-                optional.add((String) all.get(i));
+                optional.add((JispSymbol) param);
             }
         }
 
-        ArrayList func = (ArrayList) items.get(2);
+        JispCons func = (JispCons) args.get(2);
         JispFunction newfunc = new JispFunction(parm, optional, func);
-        context.getSymbols().put(symbol, newfunc);
+        newfunc.setName(symbol);
+        Object old = context.getFunction(symbol);
+        context.setFunction(symbol, newfunc);
+        JispInterp.redefined(symbol, old);
         return symbol;
     }
 
-    static Object DOTIMES(ArrayList items, JispInterp context) {
+    static Object DOTIMES(JispCons items, JispInterp context) {
         /* loop i times:  dolist (v i) (b)
             v items(0, 0) store name in locals, bind with i
             i items(0, 1) integer iterator
@@ -595,90 +627,94 @@ class JispBuiltinFunction {
         // b.add(0, A), return B
 
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() < 2) {
+        List args = new JispArguments(items);
+        if (args.size() < 2) {
             System.err.println("ERROR: incorrect number of parameters, expected at least 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        if (!(items.get(0) instanceof ArrayList)) {
+        if (!(args.get(0) instanceof JispCons)) {
             System.err.println("ERROR: first parameter must be list");
             return null;
         }
-        ArrayList p1 = (ArrayList) items.remove(0);
-        if (p1.size() != 2) {
+        JispCons p1 = (JispCons) args.get(0);
+        if (p1.length() != 2) {
             System.err.println("ERROR: incorrect number of variable parameters, expected 2 got " +
-                    Integer.toString(items.size()));
-            return null;
-        }
-        Object s1 = p1.remove(0);
-        Object s2 = context.eval(p1.remove(0));
-        if ((s1 instanceof String)) {
-            if ((s2 instanceof Integer)) {
-                String v = (String) s1;
-                Integer i = (Integer) s2;
-                IntStream.range(0, i).forEach(x -> {
-                    context.setLocal(v, x);
-                    items.forEach(context::eval);
+                    Integer.toString(args.size()));
+            return null;
+        }
+        Object s1 = p1.car();
+        Object s2 = context.eval(p1.nth(1));
+        List body = args.subList(1, args.size());
+        if ((s1 instanceof JispSymbol)) {
+            if ((s2 instanceof Long)) {
+                JispSymbol v = (JispSymbol) s1;
+                Long i = (Long) s2;
+                context.saveLocals();
+                LongStream.range(0, i).forEach(x -> {
+                    context.setLocal(v, JispNumbers.box(x));
+                    body.forEach(context::eval);
                 });
+                context.restoreLocals();
                 return null;
             } else {
                 System.err.println("ERROR: variable parameter 2 is not an integer");
                 return null;
             }
         } else {
-            System.err.println("ERROR: variable parameter 1 is not a string");
+            System.err.println("ERROR: variable parameter 1 is not a symbol");
             return null;
         }
     }
 
-    static Object DOLIST(ArrayList items, JispInterp context) {
+    static Object DOLIST(JispCons items, JispInterp context) {
         /*  loop through l: dolist (v l) (b)
             v items(0, 0) store name in locals, bind with l
             l items(0, 1) list to iterate through
             b items(1) body to execute */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        if (!(items.get(0) instanceof ArrayList)) {
+        if (!(args.get(0) instanceof JispCons)) {
             System.err.println("ERROR: first parameter must be list");
             return null;
         }
 
-        ArrayList p1 = (ArrayList) items.get(0);
-        if (p1.size() != 2) {
+        JispCons p1 = (JispCons) args.get(0);
+        if (p1.length() != 2) {
             System.err.println("ERROR: incorrect number of variable parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        Object s1 = p1.get(0);
-        Object s2 = context.eval(p1.get(1));
-        if ((s1 instanceof String)) {
-            if ((s2 instanceof ArrayList)) {
-                String v = (String) s1;
-                ArrayList l = (ArrayList) s2;
-                l.forEach(x -> {
+        Object s1 = p1.car();
+        Object s2 = context.eval(p1.nth(1));
+        if ((s1 instanceof JispSymbol)) {
+            if ((s2 == null) || (s2 instanceof JispCons) || JispArrays.isArray(s2)) {
+                JispSymbol v = (JispSymbol) s1;
+                context.saveLocals();
+                JispArrays.elements(s2).forEach(x -> {
                     context.setLocal(v, x);
-                    context.eval(items.get(1));
+                    context.eval(args.get(1));
                 });
+                context.restoreLocals();
                 return null;
             } else {
                 System.err.println("ERROR: variable parameter 2 is not a list");
                 return null;
             }
         } else {
-            System.err.println("ERROR: variable parameter 1 is not a string");
+            System.err.println("ERROR: variable parameter 1 is not a symbol");
             return null;
         }
     }
 
-    static Object DO(ArrayList items, JispInterp context) {
+    static Object DO(JispCons items, JispInterp context) {
         /* loop to process multiple lists: do ((v s i)...) (p) [b]...[b])
            v items(0) list of lists, containing variables to update.
            Each sublist is:
@@ -688,118 +724,125 @@ class JispBuiltinFunction {
            p items(1) predicate, loop until null
            b items(2...n) bodies to execute */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() < 2) {
+        List args = new JispArguments(items);
+        if (args.size() < 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        if (!items.stream().allMatch(x -> x instanceof ArrayList)) {
+        if (!args.stream().allMatch(x -> x instanceof JispCons)) {
             System.err.println("ERROR: all parameters must be lists");
             return null;
         }
 
-        ArrayList v = (ArrayList) items.remove(0);
-        if (!v.stream().allMatch(x -> x instanceof ArrayList)) {
+        JispArrayList v = new JispArrayList(args.get(0));
+        if (!v.stream().allMatch(x -> x instanceof JispCons)) {
             System.err.println("ERROR: all variable declarations must be lists");
             return null;
         }
 
-        if (!v.stream().allMatch(x -> ((ArrayList) x).get(0) instanceof String)) {
-            System.err.println("ERROR: all variable names must be Strings");
+        if (!v.stream().allMatch(x -> ((JispCons) x).car() instanceof JispSymbol)) {
+            System.err.println("ERROR: all variable names must be symbols");
             return null;
         }
 
         // first part
+        context.saveLocals();
         v.forEach(x -> {
-            ArrayList vn = (ArrayList) x;
-            String s = (String) vn.get(0);
-            context.setLocal(s, context.eval(vn.get(1)));
+            JispCons vn = (JispCons) x;
+            JispSymbol s = (JispSymbol) vn.car();
+            context.setLocal(s, context.eval(vn.nth(1)));
         });
 
         // second part
-        Object p = items.remove(0);
+        Object p = args.get(1);
+        List body = args.subList(2, args.size());
         while (context.eval(p) != null) {
-            items.forEach(context::eval);
+            body.forEach(context::eval);
             v.forEach(x -> {
-                ArrayList vn = (ArrayList) x;
-                String s = (String) vn.get(0);
-                context.setLocal(s, context.eval(vn.get(2)));
+                JispCons vn = (JispCons) x;
+                JispSymbol s = (JispSymbol) vn.car();
+                context.setLocal(s, context.eval(vn.nth(2)));
             });
         }
+        context.restoreLocals();
         return null;
     }
 
-    static Object EQ(ArrayList items, JispInterp context) {
+    static Object EQ(JispCons items, JispInterp context) {
         /* TODO: fix this
             input one, output negation
             object identity. It works for symbols and identical objects.
             If same object, return T  */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return (Objects.equals(items.get(0), items.get(1))) ?
-                "T" :
+        Object a = context.eval(args.get(0));
+        Object b = context.eval(args.get(1));
+        // conses are the same only when they are the same cell, other objects when they are equal
+        return ((a == b) || (!(a instanceof JispCons) && Objects.equals(a, b))) ?
+                JispSymbol.T :
                 null;
     }
 
-    static Object EQL(ArrayList items, JispInterp context) {
+    static Object EQL(JispCons items, JispInterp context) {
         /* compares object identity, numbers and characters.
            Numbers are considered as equal only when they have the both same value and type.
            Result is true if they are same, otherwise false. */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        ArrayList vals = (ArrayList) items.stream()
+        ArrayList vals = (ArrayList) args.stream()
                 .map(context::eval)
                 .collect(toCollection(ArrayList::new));
 
         if ((vals.get(0)).equals(vals.get(1)))
-            return ((vals.get(0) instanceof ArrayList) || ((vals.get(1) instanceof ArrayList))) ?
+            return ((vals.get(0) instanceof JispCons) || ((vals.get(1) instanceof JispCons))) ?
                     null :
-                    "T";
+                    JispSymbol.T;
         return null;
     }
 
-    static Object EQUAL(ArrayList items, JispInterp context) {
+    static Object EQUAL(JispCons items, JispInterp context) {
         /* compares same things as eql,
            additionally result is true under some other situations: conses are compared
            recursively (in both car and cdr part), string and bit-vectors are compared element-wise.
            Result is true if they are same, otherwise false. */
 
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        return (items.get(0)).equals(items.get(1)) ?
-                "T" :
+        return Objects.equals(context.eval(args.get(0)), context.eval(args.get(1))) ?
+                JispSymbol.T :
                 null;
     }
 
-    static Object FORMAT(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        String dest = ((String) items.remove(0)).toUpperCase();
-        String fmt = (String) items.remove(0);
+    static Object FORMAT(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        String dest = String.valueOf(args.get(0)).toUpperCase();
+        String fmt = (String) args.get(1);
+        int next = 2; // next argument to be formatted
         StringBuilder res = new StringBuilder();
         for (int ch = 0; ch < fmt.length(); ch++) {
             if (fmt.charAt(ch) == '~') {
                 char i = Character.toUpperCase(fmt.charAt(ch + 1));
                 if ((i == 'A') || (i == 'D')) {
-                    Object ob = items.remove(0);
+                    Object ob = args.get(next++);
                     if (ob != null)
-                        res.append(context.eval(ob).toString());
+                        res.append(JispCons.print(context.eval(ob)));
                 } else if (i == '%') {
                     res.append("\n");
                 }
@@ -815,122 +858,124 @@ class JispBuiltinFunction {
         return "\"" + res + "\"";
     }
 
-    static Object IF(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 3) {
+    static Object IF(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 3) {
             System.err.println("ERROR: incorrect number of parameters, expected 3 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return context.eval(items.get((context.eval(items.get(0)) != null) ?
+        return context.eval(args.get((context.eval(args.get(0)) != null) ?
                 1 :
                 2));
     }
 
-    static Object LAMBDA(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+    static Object LAMBDA(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 3 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        ArrayList<Object> all = (ArrayList<Object>) items.get(0);
-        ArrayList<String> parm = new ArrayList<>();
-        ArrayList<String> optional = new ArrayList<>();
+        Iterable<Object> all = JispCons.elements(args.get(0));
+        ArrayList<JispSymbol> parm = new ArrayList<>();
+        ArrayList<JispSymbol> optional = new ArrayList<>();
 
         boolean opt = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i) instanceof ArrayList) {
-                String name = (String) ((ArrayList) all.get(i)).get(0);
-                Object val = ((ArrayList) all.get(i)).get(1);
-                context.getSymbols().put(name.toUpperCase(), val);
-                all.set(i, name);
+        for (Object param : all) {
+            if (param instanceof JispCons) {
+                JispSymbol name = (JispSymbol) ((JispCons) param).car();
+                Object val = ((JispCons) param).nth(1);
+                context.setFunction(name, val);
+                param = name;
             }
 
-/*            if (all.get(i).equals("&rest")) {
+/*            if (param.equals("&rest")) {
 
-            } else if (all.get(i).equals("&key")) {
+            } else if (param.equals("&key")) {
 */
 
-            if (all.get(i).equals("&optional")) {
+            if (param == JispSymbol.OPTIONAL) {
                 opt = true;
             } else if (!opt) {
-                parm.add((String) all.get(i));
+                parm.add((JispSymbol) param);
             } else {
-                optional.add((String) all.get(i));
+                optional.add((JispSymbol) param);
             }
         }
 
-        ArrayList func = (ArrayList) items.get(1);
-        return new JispFunction(parm, optional, func);
+        JispCons func = (JispCons) args.get(1);
+        return new JispFunction(parm, optional, func, context.getFrame());
     }
 
-    static Object LET(ArrayList items, JispInterp context) {
+    static Object LET(JispCons items, JispInterp context) {
         /* Bindings are described in two element lists where the first element specifies name and the second is code
            to compute its value, or single variable without default initialization.
            final element is body: program code in which definitions above are effective, implicit progn */
 
-        items.remove(0); // 0th parm == function name
-        ArrayList bindings = (ArrayList) items.remove(0);
+        List args = new JispArguments(items);
+        Iterable<Object> bindings = JispCons.elements(args.get(0));
 
-        System.out.println(bindings.size());
+        // values are all computed in the enclosing scope before any binding is made
+        ArrayList<JispSymbol> keys = new ArrayList<>();
+        ArrayList<Object> values = new ArrayList<>();
         for (Object binding : bindings) {
-            String key;
-            Object value = null;
-
-            if (binding instanceof ArrayList) {
-                key = (String) ((ArrayList) binding).get(0);
-                value = context.eval(((ArrayList) binding).get(1));
+            if (binding instanceof JispCons) {
+                keys.add((JispSymbol) ((JispCons) binding).car());
+                values.add(context.eval(((JispCons) binding).nth(1)));
             } else {
-                key = (String) binding;
-                value = "nil";
+                keys.add((JispSymbol) binding);
+                values.add(null);
             }
-            context.setGlobal(key, value);
         }
 
+        context.saveLocals();
+        for (int i = 0; i < keys.size(); i++)
+            context.setLocal(keys.get(i), values.get(i));
+
         // check if there is body
-        return items.isEmpty() ?
+        Object result = (args.size() < 2) ?
                 null :
-                context.eval(items.get(0));
+                context.eval(args.get(1));
+        context.restoreLocals();
+        return result;
     }
 
-    static Object LIST(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval).collect(toCollection(ArrayList::new));
-
-        if (vals.isEmpty())
-            return null;
-        if (vals.size() == 1)
-            return new JispArrayList(vals.get(0));
-        Object n1 = vals.remove(0);
-        return new JispArrayList(n1, vals);
+    static Object LIST(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        return JispCons.fromList(evalArguments(args, context));
     }
 
-    static Object LOAD(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
-            System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+    static Object LOAD(JispCons items, JispInterp context) {
+        // (load file [:parallel t]), parallel reading a large file of data on every core
+        List args = new JispArguments(items);
+        if ((args.size() != 1) && (args.size() != 3)) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 or 3 got " +
+                    Integer.toString(args.size()));
             return null;
         }
+        boolean parallel = false;
+        if (args.size() == 3) {
+            if (!":PARALLEL".equals(String.valueOf(args.get(1)))) {
+                System.err.println("ERROR: unknown load keyword " + args.get(1));
+                return null;
+            }
+            parallel = context.eval(args.get(2)) != null;
+        }
 
-        Object target = context.eval(items.get(0));
+        Object target = context.eval(args.get(0));
         if (!(target instanceof String)) {
             System.err.println("ERROR: parameter 1 not a string");
             return null;
         }
 
         String fn = (String) target;
-        JispParser parser = new JispParser();
-
         try {
-            String line = new String(Files.readAllBytes(Paths.get(fn)));
-            ArrayList res = (ArrayList) parser.interpret(line);
-            for (Object i : res) {
-                Object result = context.eval(i);
-            }
+            if (parallel)
+                context.loadParallel(Paths.get(fn));
+            else
+                context.load(Paths.get(fn));
         } catch (IOException x) {
             System.out.println(x.getMessage());
             return null;
@@ -938,303 +983,604 @@ class JispBuiltinFunction {
         return true;
     }
 
-    static Object MAX(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    // (compile-file source [output]) writes a FASL for LOAD, by default source with a .fasl extension
+    static Object COMPILE_FILE(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if ((args.size() < 1) || (args.size() > 2)) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 or 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object source = context.eval(args.get(0));
+        if (!(source instanceof String)) {
+            System.err.println("ERROR: parameter 1 not a string");
+            return null;
+        }
+        Object output = (args.size() > 1) ?
+                context.eval(args.get(1)) :
+                ((String) source).replaceFirst("(\\.[^./\\\\]*)?$", ".fasl");
+        if (!(output instanceof String)) {
+            System.err.println("ERROR: parameter 2 not a string");
+            return null;
+        }
+
+        try {
+            JispFasl.compileFile(Paths.get((String) source), Paths.get((String) output));
+        } catch (IOException x) {
+            System.out.println(x.getMessage());
+            return null;
+        }
+        return output;
+    }
+
+    static Object MAX(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        ArrayList vals = evalArguments(args, context);
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
-        return vals.stream().anyMatch(i -> (i instanceof Double)) ?
-                vals.stream()
-                        .mapToDouble(f -> ((Number) f).doubleValue())
-                        .max().getAsDouble() :
-                vals.stream()
-                        .mapToInt(f -> ((Number) f).intValue())
-                        .max().getAsInt();
+        Object best = null;
+        boolean floats = false;
+        for (Object v : vals) {
+            floats |= v instanceof Double;
+            if ((best == null) || JispNumbers.lessThan(best, v))
+                best = v;
+        }
+        // like arithmetic, a float anywhere makes the result a float
+        return (floats && (best != null)) ?
+                (Object) ((Number) best).doubleValue() :
+                best;
     }
 
-    static Object MIN(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
-                .map(context::eval)
-                .collect(toCollection(ArrayList::new));
-        if (vals.stream()
-                .anyMatch(i -> !((i instanceof Integer) || (i instanceof Double)))) {
+    static Object MIN(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        ArrayList vals = evalArguments(args, context);
+        if (!numbers(vals)) {
             System.err.println("ERROR: only numbers can be compared");
             return null;
         }
-        return vals.stream().anyMatch(i -> (i instanceof Double)) ?
-                vals.stream()
-                        .mapToDouble(f -> ((Number) f).doubleValue())
-                        .min().getAsDouble() :
-                vals.stream()
-                        .mapToInt(f -> ((Number) f).intValue())
-                        .min().getAsInt();
+        Object best = null;
+        boolean floats = false;
+        for (Object v : vals) {
+            floats |= v instanceof Double;
+            if ((best == null) || JispNumbers.lessThan(v, best))
+                best = v;
+        }
+        // like arithmetic, a float anywhere makes the result a float
+        return (floats && (best != null)) ?
+                (Object) ((Number) best).doubleValue() :
+                best;
     }
 
-    static Object MOD(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream().map(context::eval).collect(toCollection(ArrayList::new));
-        if (vals.stream().anyMatch(i -> !(i instanceof Integer))) {
+    static Object MOD(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        ArrayList vals = (ArrayList) args.stream().map(context::eval).collect(toCollection(ArrayList::new));
+        if (vals.stream().anyMatch(i -> !JispNumbers.isInteger(i))) {
             System.err.println("ERROR: modulus only works for integer values");
             return null;
         }
 
-        return (Integer) vals.get(0) % (Integer) vals.get(1);
+        return JispNumbers.remainder(vals.get(0), vals.get(1));
     }
 
-    static Object QUIT(ArrayList items, JispInterp context) {
+    static Object QUIT(JispCons items, JispInterp context) {
         Main.running = false;
         return null;
     }
 
-    static Object QUOTE(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object QUOTE(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return items.get(0);
+        return args.get(0);
     }
 
-    static Object RANDOM(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object RANDOM(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
         Random random = new Random();
-        if (items.stream().anyMatch(i -> i instanceof Double))
-            return (random.nextDouble() * (Double) context.eval(items.get(0)));
+        if (args.stream().anyMatch(i -> i instanceof Double))
+            return (random.nextDouble() * (Double) context.eval(args.get(0)));
         else
-            return random.nextInt((Integer) context.eval(items.get(0)));
+            return JispNumbers.box(random.nextLong((Long) context.eval(args.get(0))));
     }
 
-    static Object ROUND(ArrayList items, JispInterp context) {
-        /* TODO: fix this
-           first: quotient (integer), truncating toward nearest even integer
-           second: remainder (integer or double)
-           remainder: number - (quotient * divisor) */
-
-        items.remove(0); // 0th parm == function name
-        if (items.size() > 2) {
-            System.err.println("ERROR: incorrect number of parameters, expected 1 or 2, got " + Integer.toString(items.size()));
-            return null;
-        }
-        int quotient;
-        Double remainder;
-        if (items.stream().anyMatch(i -> i instanceof Double)) {
-            if (items.size() == 1)
-                items.add(1d);
-            quotient = toIntExact(round((Double) items.get(0) / (Double) items.get(1)));
-            remainder = (Double) items.get(0) - (round((Double) items.get(0) / (Double) items.get(1)) * (Double) items.get(1));
-        } else {
-            if (items.size() == 1)
-                items.add(1);
-            quotient = round((int) items.get(0) / (int) items.get(1));
-            remainder = (Double) items.get(0) - (round((int) items.get(0) / (int) items.get(1)) * (Double) items.get(1));
+    static Object ROUND(JispCons items, JispInterp context) {
+        /* (round number [divisor]) is (quotient remainder): the quotient is number / divisor
+           rounded to the nearest integer, halves to the even one, and the remainder is
+           number - quotient * divisor */
+        List args = new JispArguments(items);
+        if ((args.size() < 1) || (args.size() > 2)) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 or 2, got " + Integer.toString(args.size()));
+            return null;
         }
-
-        items.set(0, quotient);
-        // remainder: number - (quotient * divisor)
-        items.set(1, ((remainder % 1) == 0) ?
-                ((int) items.get(0) - (quotient * (int) items.get(1))) :
-                ((Double) items.get(0) - (quotient * (Double) items.get(1))));
-        return items;
+        ArrayList vals = evalArguments(args, context);
+        if (vals.size() == 1)
+            vals.add(JispNumbers.box(1));
+        if (!numbers(vals)) {
+            System.err.println("ERROR: only numbers can be rounded");
+            return null;
+        }
+        Object quotient = JispNumbers.round(vals.get(0), vals.get(1));
+        Object remainder = JispNumbers.subtract(vals.get(0), JispNumbers.multiply(quotient, vals.get(1)));
+        return JispCons.list(quotient, remainder);
     }
 
-    static Object SET(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+    static Object SET(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        String key = (String) items.get(0);
-        Object value = context.eval(items.get(1));
+        JispSymbol key = (JispSymbol) args.get(0);
+        Object value = context.eval(args.get(1));
         context.setGlobal(key, value);
         return value;
     }
 
-    static Object SIN(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object SIN(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return StrictMath.sin((items.get(0) instanceof Double) ?
-                (Double) items.get(0) :
-                (Integer) items.get(0));
+        return StrictMath.sin(((Number) context.eval(args.get(0))).doubleValue());
     }
 
-    static Object SQRT(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object SQRT(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        double num = ((Number) items.remove(0)).doubleValue();
+        double num = ((Number) context.eval(args.get(0))).doubleValue();
         return sqrt(num);
     }
 
-    static Object TYPEOF(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object THE(JispCons items, JispInterp context) {
+        /* (the type form) is the value of form, which must be of type: fixnum, double-float
+           or (signed-byte n); other types are not checked. The compiler keeps a value it is
+           told is a number unboxed */
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+        Object value = context.eval(args.get(1));
+        Class type = JispArrays.elementType(args.get(0));
+        boolean ok;
+        if (type == double.class)
+            ok = value instanceof Double;
+        else if (type == int.class)
+            ok = (value instanceof Long) && ((Long) value == ((Long) value).intValue());
+        else if (type == long.class)
+            ok = value instanceof Long;
+        else
+            ok = true;
+        if (!ok) {
+            System.err.println("ERROR: " + value + " is not of type " + args.get(0));
+            return null;
+        }
+        return value;
+    }
+
+    static Object TIME(JispCons items, JispInterp context) {
+        /* evaluates a form and reports how long it took, how much it allocated,
+           how much it allocated per interpreted function call, and how many
+           functions were compiled by tiering meanwhile */
+
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        long calls = context.getCallCount();
+        int compiled = JispTier.getCompiledCount();
+        long bytes = JispInterp.allocatedBytes();
+        long start = System.nanoTime();
+        Object result = context.eval(args.get(0));
+        long elapsed = System.nanoTime() - start;
+        bytes = JispInterp.allocatedBytes() - bytes;
+        calls = context.getCallCount() - calls;
+        int tiered = JispTier.getCompiledCount() - compiled;
+
+        System.err.println("Evaluation took:");
+        System.err.printf("  %.6f seconds of real time%n", elapsed / 1e9);
+        System.err.printf("  %,d bytes consed%n", bytes);
+        System.err.printf("  %,d interpreted calls", calls);
+        if (calls > 0)
+            System.err.printf(", %,d bytes per call", bytes / calls);
+        System.err.println();
+        if (tiered > 0)
+            System.err.printf("  %d functions compiled by tiering%n", tiered);
+        return result;
+    }
+
+    static Object TYPEOF(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        Object res = context.eval(items.get(0));
+        Object res = context.eval(args.get(0));
         return (res == null) ?
                 null :
                 res.getClass().toString();
     }
 
-    static Object ZEROP(ArrayList items, JispInterp context) {
+    static Object ZEROP(JispCons items, JispInterp context) {
         // returns true if argument is zero
-        items.remove(0); // 0th parm == function name
-        ArrayList vals = (ArrayList) items.stream()
+        List args = new JispArguments(items);
+        ArrayList vals = (ArrayList) args.stream()
                 .map(context::eval)
                 .collect(toCollection(ArrayList::new));
-        if (items.size() != 1) {
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        return items.stream()
+        return vals.stream()
                 .mapToDouble(f -> ((Number) f).doubleValue())
                 .allMatch(t -> t == 0) ?
-                "T" :
+                JispSymbol.T :
                 null;
     }
 
-    static Object PROGN(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
+    static Object PROGN(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
         Object result = null;
-        for (Object x : items)
+        for (Object x : args)
             result = context.eval(x);
         return result;
     }
 
-    static Object PUSH(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+    static Object PUSH(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        Object item = context.eval(items.get(0));
-        Object stack = context.getVariable((String) items.get(1));
-        Object res = null;
-        if (stack instanceof ArrayList) {
-            res = copy(stack);
-            ((ArrayList) res).add(0, item);
-        } else {
-            ArrayList newstack = new ArrayList();
-            if (stack != null) newstack.add(stack);
-            newstack.add(item);
-            res = newstack;
-        }
-        context.setGlobal((String) items.get(1), res);
+        Object item = context.eval(args.get(0));
+        Object stack = context.getVariable((JispSymbol) args.get(1));
+        // the old stack becomes the tail of the new one, no copying needed
+        Object res = new JispCons(item, stack);
+        context.setGlobal((JispSymbol) args.get(1), res);
         return res;
     }
 
-    static Object POP(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object POP(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        Object stack = context.getVariable((String) items.get(0));
+        Object stack = context.getVariable((JispSymbol) args.get(0));
         Object res = null;
-        if (stack instanceof ArrayList) {
-            res = ((ArrayList) stack).isEmpty() ?
-                    null :
-                    ((ArrayList) stack).remove(0);
+        if (stack instanceof JispCons) {
+            res = ((JispCons) stack).car();
+            stack = ((JispCons) stack).cdr();
         } else {
             res = stack;
             stack = null;
         }
-        context.setGlobal((String) items.get(0), stack);
+        context.setGlobal((JispSymbol) args.get(0), stack);
         return res;
     }
 
-    static Object STRING(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object STRING(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return context.eval(items.get(0)).toString();
+        return context.eval(args.get(0)).toString();
     }
 
-    static Object STRING_UPCASE(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object STRING_UPCASE(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return context.eval(items.get(0)).toString().toUpperCase();
+        return context.eval(args.get(0)).toString().toUpperCase();
     }
 
-    static Object STRING_DOWNCASE(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object STRING_DOWNCASE(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        return context.eval(items.get(0)).toString().toLowerCase();
+        return context.eval(args.get(0)).toString().toLowerCase();
     }
 
-    static Object ELT(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 2) {
+    static Object ELT(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
             System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
 
-        Object idx = context.eval(items.get(1));
-        if (!(idx instanceof Integer)) {
-            System.err.println("ERROR: index parameter must be Integer");
+        Object idx = context.eval(args.get(1));
+        if (!(idx instanceof Long)) {
+            System.err.println("ERROR: index parameter must be an integer");
             return null;
         }
-        Object seq = context.eval(items.get(0));
+        Object seq = context.eval(args.get(0));
         if (seq instanceof String) {
-            return ((String) seq).charAt((Integer) idx);
-        } else if (seq instanceof ArrayList) {
-            return ((ArrayList) seq).get((Integer) idx);
+            return ((String) seq).charAt(((Long) idx).intValue());
+        } else if (seq instanceof JispCons) {
+            return ((JispCons) seq).nth(((Long) idx).intValue());
+        } else if (JispArrays.isArray(seq)) {
+            return JispArrays.aref(seq, idx);
         } else
             return null;
     }
 
-    static Object NULL(ArrayList items, JispInterp context) {
-        items.remove(0); // 0th parm == function name
-        if (items.size() != 1) {
+    static Object NULL(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+        return (context.eval(args.get(0)) == null) ?
+                JispSymbol.T :
+                null;
+    }
+
+    static Object MAKE_ARRAY(JispCons items, JispInterp context) {
+        /* (make-array size :element-type type :initial-element x), where type is fixnum,
+           double-float, (signed-byte n) or anything else for an array of any values */
+
+        List args = new JispArguments(items);
+        if ((args.size() < 1) || (args.size() % 2 != 1)) {
+            System.err.println("ERROR: make-array requires a size followed by keyword arguments");
+            return null;
+        }
+
+        Object size = context.eval(args.get(0));
+        if (!(size instanceof Long) || ((Long) size < 0) || ((Long) size > Integer.MAX_VALUE - 8)) {
+            System.err.println("ERROR: array size must be a non-negative fixnum");
+            return null;
+        }
+
+        Object type = null;
+        Object initial = null;
+        for (int i = 1; i < args.size(); i += 2) {
+            String key = String.valueOf(args.get(i));
+            switch (key) {
+                case ":ELEMENT-TYPE":
+                    type = context.eval(args.get(i + 1));
+                    break;
+                case ":INITIAL-ELEMENT":
+                    initial = context.eval(args.get(i + 1));
+                    break;
+                default:
+                    System.err.println("ERROR: unknown make-array keyword " + key);
+                    return null;
+            }
+        }
+        return JispArrays.make(type, (int) (long) (Long) size, initial);
+    }
+
+    static Object AREF(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+        return JispArrays.aref(context.eval(args.get(0)), context.eval(args.get(1)));
+    }
+
+    static Object SETF(JispCons items, JispInterp context) {
+        // the places are array elements, (aref array index), and hash table entries, (gethash key table)
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object place = args.get(0);
+        if ((place instanceof JispCons) && (((JispCons) place).length() >= 3)) {
+            JispCons form = (JispCons) place;
+            if ((form.car() == JispSymbol.intern("AREF")) && (form.length() == 3)) {
+                Object array = context.eval(form.nth(1));
+                Object index = context.eval(form.nth(2));
+                return JispArrays.aset(array, index, context.eval(args.get(1)));
+            }
+            if ((form.car() == JispSymbol.intern("GETHASH")) && (form.length() <= 4)) {
+                Object key = context.eval(form.nth(1));
+                Object table = context.eval(form.nth(2));
+                return JispHashTable.puthash(key, table, context.eval(args.get(1)));
+            }
+        }
+        System.err.println("ERROR: setf requires an (aref array index) or (gethash key table) place");
+        return null;
+    }
+
+    static Object LENGTH(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object seq = context.eval(args.get(0));
+        if (seq == null)
+            return JispNumbers.box(0);
+        if (seq instanceof JispCons)
+            return JispNumbers.box(((JispCons) seq).length());
+        if (seq instanceof String)
+            return JispNumbers.box(((String) seq).length());
+        if (JispArrays.isArray(seq))
+            return JispNumbers.box(JispArrays.length(seq));
+        System.err.println("ERROR: length requires a sequence");
+        return null;
+    }
+
+    static Object FILL(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object array = context.eval(args.get(0));
+        if (!JispArrays.isArray(array)) {
+            System.err.println("ERROR: fill requires an array");
+            return null;
+        }
+        return JispArrays.fill(array, context.eval(args.get(1)));
+    }
+
+    static Object MAKE_HASH_TABLE(JispCons items, JispInterp context) {
+        // (make-hash-table :test test :size n), where test is eq, eql (the default) or equal
+        List args = new JispArguments(items);
+        if (args.size() % 2 != 0) {
+            System.err.println("ERROR: make-hash-table requires keyword arguments");
+            return null;
+        }
+
+        JispHashTable.Test test = JispHashTable.Test.EQL;
+        int size = 0;
+        for (int i = 0; i < args.size(); i += 2) {
+            String key = String.valueOf(args.get(i));
+            Object value = context.eval(args.get(i + 1));
+            switch (key) {
+                case ":TEST":
+                    try {
+                        test = JispHashTable.Test.valueOf(String.valueOf(value));
+                    } catch (IllegalArgumentException ex) {
+                        System.err.println("ERROR: hash table test must be eq, eql or equal");
+                        return null;
+                    }
+                    break;
+                case ":SIZE":
+                    if (!(value instanceof Long) || ((Long) value < 0) || ((Long) value > Integer.MAX_VALUE)) {
+                        System.err.println("ERROR: hash table size must be a non-negative fixnum");
+                        return null;
+                    }
+                    size = (int) (long) (Long) value;
+                    break;
+                default:
+                    System.err.println("ERROR: unknown make-hash-table keyword " + key);
+                    return null;
+            }
+        }
+        return new JispHashTable(test, size);
+    }
+
+    static Object GETHASH(JispCons items, JispInterp context) {
+        // (gethash key table [default]) gives default, or nil, when key is not in the table
+        List args = new JispArguments(items);
+        if ((args.size() < 2) || (args.size() > 3)) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 or 3 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object key = context.eval(args.get(0));
+        Object table = context.eval(args.get(1));
+        if (!(table instanceof JispHashTable)) {
+            System.err.println("ERROR: gethash requires a hash table");
+            return null;
+        }
+        Object missing = (args.size() == 3) ?
+                context.eval(args.get(2)) :
+                null;
+        return ((JispHashTable) table).get(key, missing);
+    }
+
+    static Object REMHASH(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object key = context.eval(args.get(0));
+        Object table = context.eval(args.get(1));
+        if (!(table instanceof JispHashTable)) {
+            System.err.println("ERROR: remhash requires a hash table");
+            return null;
+        }
+        return truth(((JispHashTable) table).remove(key));
+    }
+
+    static Object MAPHASH(JispCons items, JispInterp context) {
+        // calls a function of two arguments with every key and value in the table
+        List args = new JispArguments(items);
+        if (args.size() != 2) {
+            System.err.println("ERROR: incorrect number of parameters, expected 2 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object function = context.eval(args.get(0));
+        Object table = context.eval(args.get(1));
+        if (!(table instanceof JispHashTable)) {
+            System.err.println("ERROR: maphash requires a hash table");
+            return null;
+        }
+        ((JispHashTable) table).forEach((key, value) -> context.funcall(function, key, value));
+        return null;
+    }
+
+    static Object HASH_TABLE_COUNT(JispCons items, JispInterp context) {
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
+            System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
+                    Integer.toString(args.size()));
+            return null;
+        }
+
+        Object table = context.eval(args.get(0));
+        if (!(table instanceof JispHashTable)) {
+            System.err.println("ERROR: hash-table-count requires a hash table");
+            return null;
+        }
+        return JispNumbers.box(((JispHashTable) table).count());
+    }
+
+    static Object SXHASH(JispCons items, JispInterp context) {
+        // a hash code that is the same for any two EQUAL objects
+        List args = new JispArguments(items);
+        if (args.size() != 1) {
             System.err.println("ERROR: incorrect number of parameters, expected 1 got " +
-                    Integer.toString(items.size()));
+                    Integer.toString(args.size()));
             return null;
         }
-        Object res = context.eval(items.get(0));
-        if (res instanceof Collection)
-            return ((Collection) res).isEmpty() ?
-                    true :
-                    null;
-        return res == null;
+        return JispNumbers.box(JispHashTable.sxhash(context.eval(args.get(0))));
     }
-}
\ No newline at end of file
+}
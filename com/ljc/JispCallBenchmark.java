@@ -0,0 +1,37 @@
+package com.ljc;
+
+public class JispCallBenchmark {
+
+    /* Interpreted calls per second: (fib n) makes 2 fib(n + 1) - 1 calls of FIB, each of
+       which goes through the builtins IF, <, + and -, and through the symbol table for FIB
+       itself. The best round's time is divided into that count.
+       usage: JispCallBenchmark [n [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))";
+
+    public static void main(String... args) throws InterruptedException {
+        int n = (int) JispBenchmark.argument(args, 0, 25);
+        int rounds = (int) JispBenchmark.argument(args, 1, 5);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispBenchmark.onLargeStack(() -> {
+            JispInterp interp = JispBenchmark.load(PROGRAM);
+            long best = JispBenchmark.best(interp, "(fib " + n + ")", Long.toString(fib(n)), 1, rounds);
+            long calls = 2 * fib(n + 1) - 1;
+            System.out.printf("(fib %d), best of %d rounds%n", n, rounds);
+            System.out.printf("  %,d calls in %d ms, %,.0f calls/s%n", calls, best / 1_000_000, calls * 1e9 / best);
+        });
+    }
+
+    private static long fib(int n) {
+        long a = 0;
+        long b = 1;
+        for (int i = 0; i < n; i++) {
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,59 @@
+package com.ljc;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+public class JispCompileBenchmark {
+
+    /* Interpreted against compiled code: (fib n) is timed in one interpreter as DEFUN left it
+       and in another after COMPILE. Several rounds so the JIT has settled; the best round of
+       each is reported.
+       usage: JispCompileBenchmark [n [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))";
+    private static final long STACK_SIZE = 1L << 28;
+
+    public static void main(String... args) throws InterruptedException {
+        int n = (args.length > 0) ?
+                Integer.parseInt(args[0]) :
+                30;
+        int rounds = (args.length > 1) ?
+                Integer.parseInt(args[1]) :
+                5;
+
+        // the interpreter recurses on the Java stack, as in Main
+        Thread worker = new Thread(null, () -> {
+            long interpreted = run(n, rounds, false);
+            long compiled = run(n, rounds, true);
+            System.out.printf("(fib %d), best of %d rounds%n", n, rounds);
+            System.out.printf("  interpreted: %6d ms%n", interpreted);
+            System.out.printf("  compiled:    %6d ms, %.1fx%n", compiled, (double) interpreted / compiled);
+        }, "jisp", STACK_SIZE);
+        worker.start();
+        worker.join();
+    }
+
+    private static long run(int n, int rounds, boolean compile) {
+        JispInterp interp = new JispInterp();
+        JispParser parser = new JispParser();
+        for (Object form : (ArrayList) parser.interpret(PROGRAM))
+            interp.eval(form);
+        if (compile)
+            new JispCompiler().compile("FIB", (JispFunction) interp.getFunction(JispSymbol.intern("FIB")),
+                    EnumSet.noneOf(JispCompiler.CompileFlags.class));
+        Object call = ((ArrayList) parser.interpret("(fib " + n + ")")).get(0);
+
+        long best = Long.MAX_VALUE;
+        Object expected = null;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            Object result = interp.eval(call);
+            best = Math.min(best, System.nanoTime() - start);
+            if ((expected != null) && !expected.equals(result))
+                throw new IllegalStateException("(fib " + n + ") gave " + result + " and " + expected);
+            expected = result;
+        }
+        return best / 1_000_000;
+    }
+}
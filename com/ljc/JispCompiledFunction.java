@@ -1,8 +1,6 @@
 package com.ljc;
 
-import java.util.ArrayList;
-
 @FunctionalInterface
 public interface JispCompiledFunction {
-    Object evaluate(ArrayList items, JispInterp context);
+    Object evaluate(JispCons items, JispInterp context);
 }
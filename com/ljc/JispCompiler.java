@@ -5,26 +5,62 @@ import jas.*;
 import java.io.*;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Stack;
 import java.util.Vector;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static jas.RuntimeConstants.*;
 
 class JispCompiler {
-    /* evaluate(ArrayList list, JispInterp context)
-       opc_aload_0 local variable 0 list
-       opc_aload_1 local variable 1 context */
+    /* call(JispInterp context, Object p1, ... Object pn) runs the function, taking the
+       argument values in order; compiled callers link straight to it, see
+       JispInterp.bootstrapCompiledCall
+       opc_aload_0 local variable 0 context
+       local variables 1 to n hold the parameters, the &optional ones after the required ones,
+       and after them come the variables of the loops being compiled. An optional parameter
+       the caller leaves out is passed nil, see JispInterp.setCallSite. The interpreter calls
+       it too, spreading the array it holds the argument values in.
+       evaluate(JispCons list, JispInterp context) is the entry for Java code using Jisp as a
+       library: it evaluates the arguments in list, which come after the function name, and
+       calls call.
 
-    static JispClassLoader loader = new JispClassLoader(ClassLoader.getSystemClassLoader());
-    private static int lambda_number = 0;
-    private ArrayList<String> parms; // which array index each variable is at
+       Numbers are kept unboxed where kindOf can tell their type from the code: literals,
+       arithmetic on those, DOTIMES counters, DO variables that stay double-floats or count
+       up or down from a fixnum, and (the type form). Those are computed with long and
+       double instructions in JVM locals and on the stack, comparisons of them branch
+       directly, and they are only boxed where they escape: passed to a function, stored or
+       returned. Fixnum arithmetic is only unboxed where it cannot overflow, on operands known
+       to fit in 32 bits, since the interpreter would go over to a bignum.
+
+       Constants, boxed numbers, symbols and quoted lists, are made once, when the class is
+       initialised, and kept in its static final fields K0, K1 and so on; the code loads
+       them with getstatic rather than building them again on every pass.
+
+       LET, COND, AND, OR, SET and LAMBDA are compiled here rather than left to their
+       builtins: the tests branch directly, and LET keeps its bindings in locals, unboxed
+       where their type is known, unless a builtin in its body needs them in the context. A
+       LAMBDA's body becomes another static method of the class, lambda0 and so on, taking
+       the variables it captures from locals ahead of its own parameters. Arithmetic and
+       comparisons whose operands' types are not known call JispNumbers on the values
+       rather than the builtin on a list. */
+
+    private static final AtomicInteger lambda_number = new AtomicInteger();
+    private ArrayList<JispSymbol> parms; // which array index each variable is at
     private int labelno;
-    private int loopdepth;
+    private int loopdepth; // the next free local variable
+    private int maxlocals;
     private Stack<String> states; // remembers states for stackmap
+    private Stack<String> operands; // what is held on the operand stack, for stackmap
+    private HashMap<JispSymbol, Typed> typed; // loop variables held unboxed, and LET variables
+    private ArrayList<Object> constants; // the values of the fields K0 up, see pushConstant
+    private ArrayList<Lambda> lambdas; // the methods lambda0 up, see handleLambdaStatement
+    private String className;
+    private boolean quiet;
 
     JispCompiler() {
     }
@@ -42,15 +78,8 @@ class JispCompiler {
     }
 
     Object compile(String functionName, JispFunction fx, EnumSet<CompileFlags> options) {
-        ClassEnv cf = new ClassEnv();
-        states = new Stack<>();
-        labelno = 0;
-        loopdepth = 2;
-        int bsmno = 0;
-        parms = fx.getParameters().stream()
-                .map(String::toUpperCase)
-                .collect(Collectors.toCollection(ArrayList::new));
-        String name = "JispLambda" + Integer.toString(lambda_number++);
+        quiet = options.contains(CompileFlags.QUIET);
+        String name = newClassName();
 
         if (options.contains(CompileFlags.DEBUG)) {
             name = functionName.toUpperCase();
@@ -63,183 +92,538 @@ class JispCompiler {
             dir = f.getParent();
         }
 
-        prepareClass(cf, name);
+        byte[] classdata = generate(name, fx);
+        if (classdata == null) {
+            report("COMPILE FAILED.");
+            return null;
+        }
 
-        CodeAttr func = new CodeAttr();
-        StackMap sm = new StackMap(cf);
-        func.setStackMap(sm);
+        if (options.contains(CompileFlags.DEBUG) || options.contains(CompileFlags.PATH)) {
+            try {
+                File d = new File(dir);
+                d.mkdirs();
+                FileOutputStream debugOut = new FileOutputStream(dir + "/" + name + ".class");
+                debugOut.write(classdata);
+                debugOut.close();
+            } catch (IOException ex) {
+                report("ERROR:" + ex.getMessage());
+                report("COMPILE FAILED.");
+                return null;
+            }
+        }
+        return install(functionName, fx, name, classdata);
+    }
+
+    // a class name no other compiled function has taken
+    static String newClassName() {
+        return "JispLambda" + Integer.toString(lambda_number.getAndIncrement());
+    }
+
+    // the class file of a class called name, whose static evaluate method runs fx; null if it fails
+    byte[] generate(String name, JispFunction fx) {
+        ClassEnv cf = new ClassEnv();
+        constants = new ArrayList<>();
+        lambdas = new ArrayList<>();
+        className = name;
+        labelno = 0;
+
+        prepareClass(cf, name);
 
+        CodeAttr adapter = new CodeAttr();
         try {
-            compileSubtree(fx.getFunction(), func, sm);
-            func.addInsn(new Insn(opc_areturn));
-            func.setStackSize((short) 120);
-            func.setVarSize((short) 20);
+            CodeAttr func = compileMethod(fx.getAllParameters(), fx.getFunction(), true, cf);
+            evaluateArguments(adapter, name);
+            cf.addMethod(new Method((short) (ACC_PUBLIC | ACC_STATIC), new AsciiCP("call"),
+                    new AsciiCP(callDescriptor(parms.size())), func, new ExceptAttr()));
+            // compiling a lambda can find more of them
+            for (int i = 0; i < lambdas.size(); i++) {
+                Lambda l = lambdas.get(i);
+                cf.addMethod(new Method((short) (ACC_PRIVATE | ACC_STATIC), new AsciiCP(l.method),
+                        new AsciiCP(callDescriptor(l.parameters.size())),
+                        compileMethod(l.parameters, l.body, false, cf), new ExceptAttr()));
+            }
         } catch (jas.jasError jasError) {
-            System.err.println(jasError.getMessage());
-            System.err.println("COMPILE FAILED.");
+            report(jasError.getMessage());
             return null;
         } catch (Exception ex) {
-            System.err.println("ERROR: " + ex.getMessage());
-            System.err.println("COMPILE FAILED.");
+            report("ERROR: " + ex.getMessage());
             return null;
         }
 
-        Method evaluate = new Method((short) (ACC_PUBLIC | ACC_STATIC), new AsciiCP("evaluate"),
-                new AsciiCP("(Ljava/util/ArrayList;Lcom/ljc/JispInterp;)Ljava/lang/Object;"),
-                func, new ExceptAttr());
-        cf.addMethod(evaluate);
+        cf.addMethod(new Method((short) (ACC_PUBLIC | ACC_STATIC), new AsciiCP("evaluate"),
+                new AsciiCP("(Lcom/ljc/JispCons;Lcom/ljc/JispInterp;)Ljava/lang/Object;"),
+                adapter, new ExceptAttr()));
 
         try {
+            if (!constants.isEmpty())
+                addConstants(cf);
             ByteArrayOutputStream classdata = new ByteArrayOutputStream();
             cf.write(new DataOutputStream(classdata));
+            return classdata.toByteArray();
+        } catch (IOException | jasError ex) {
+            report("ERROR:" + ex.getMessage());
+            return null;
+        }
+    }
 
-            if (options.contains(CompileFlags.DEBUG) || options.contains(CompileFlags.PATH)) {
-                File d = new File(dir);
-                d.mkdirs();
-                FileOutputStream debugOut = new FileOutputStream(dir + "/" + name + ".class");
-                debugOut.write(classdata.toByteArray());
-                debugOut.close();
-            }
+    /* the code of a method taking the context and then parameters, and returning the value of
+       body. A parameter that a builtin in body needs bound in the context is bound there as
+       well, and looked up there from then on. A DEFUN's body that looks variables up in the
+       context runs at top level, see JispInterp.enterTopLevel; a LAMBDA's runs in its closure */
+    private CodeAttr compileMethod(ArrayList<JispSymbol> parameters, Object body, boolean defun, ClassEnv cf)
+            throws Exception {
+        states = new Stack<>();
+        operands = new Stack<>();
+        typed = new HashMap<>();
+        parms = new ArrayList<>(parameters);
+        loopdepth = 1 + parms.size();
+        maxlocals = loopdepth;
 
-            Class jc = loader.loadJispClass(name, classdata.toByteArray());
-            if (functionName == null) { // lambda returns class
-                return (JispCompiledFunction) (items, context) -> {
-                    try {
-                        return jc.getDeclaredMethod("evaluate", new Class[]{ArrayList.class, JispInterp.class})
-                                .invoke(null, items, context);
-                    } catch (Throwable x) {
-                        System.err.println("ERROR: error invoking lambda: " + x.getMessage());
-                    }
-                    return null;
-                };
-            } else {
+        CodeAttr code = new CodeAttr();
+        StackMap sm = new StackMap(cf);
+        code.setStackMap(sm);
+        int caller = -1;
+        if (defun && freeVariables(body, parameters)) {
+            caller = newLocal("java/lang/Object");
+            code.addInsn(new Insn(opc_aload_0));
+            code.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                    "enterTopLevel", "()Ljava/lang/Object;")));
+            code.addInsn(new Insn(opc_astore, caller));
+        }
+        boolean bound = false;
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!needsBinding(parameters.get(i), body, false))
+                continue;
+            if (!bound)
+                pushSaveLocals(code);
+            bound = true;
+            code.addInsn(new Insn(opc_aload_0));
+            pushConstSymbol(parameters.get(i), code);
+            pushParameter(i, code);
+            code.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                    "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+            parms.set(i, null); // keeps its slot, but is no longer found there
+        }
+        compileSubtree(body, code, sm);
+        if (bound)
+            pushRestoreLocals(code);
+        if (caller >= 0) {
+            code.addInsn(new Insn(opc_aload_0));
+            code.addInsn(new Insn(opc_aload, caller));
+            code.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                    "leaveTopLevel", "(Ljava/lang/Object;)V")));
+            freeLocals(1);
+        }
+        code.addInsn(new Insn(opc_areturn));
+        code.setStackSize((short) 120);
+        code.setVarSize((short) maxlocals);
+        return code;
+    }
+
+    /* loads a class made by generate and makes it the code of fx: for a lambda (functionName
+       null) gives a function object that calls it, and for a named function installs it as
+       that function's compiled code, giving true. Also used by LOAD for the classes in a FASL */
+    Object install(String functionName, JispFunction fx, String name, byte[] classdata) {
+        // a loader of its own, so a redefined function can be compiled again under the same name
+        JispClassLoader loader = new JispClassLoader(ClassLoader.getSystemClassLoader());
+        Class jc;
+        try {
+            jc = loader.loadJispClass(name, classdata);
+            // initialising the class verifies it, so bad bytecode fails here and not on the first call
+            Class.forName(name, true, loader);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            report("ERROR: " + ex);
+            report("COMPILE FAILED.");
+            return null;
+        }
+        if (functionName == null) { // lambda returns class
+            return (JispCompiledFunction) (items, context) -> {
                 try {
-                    MethodHandle target = MethodHandles.lookup().findStatic(jc, "evaluate",
-                            MethodType.methodType(Object.class,
-                                    new Class[]{ArrayList.class, JispInterp.class}));
-                    JispInterp.setCallSite(functionName, target);
-                    return true;
-                } catch (Throwable ex) {
-                    System.err.println("ERROR: compiler couldn't find it's own method. This should not happen.");
-                    return null;
+                    return jc.getDeclaredMethod("evaluate", new Class[]{JispCons.class, JispInterp.class})
+                            .invoke(null, items, context);
+                } catch (Throwable x) {
+                    System.err.println("ERROR: error invoking lambda: " + x.getMessage());
                 }
+                return null;
+            };
+        }
+        try {
+            MethodHandle call = MethodHandles.lookup().findStatic(jc, "call",
+                    JispInterp.callType(fx.getAllParameters().size()));
+            if (!JispInterp.setCallSite(functionName, fx, call)) {
+                report("COMPILE FAILED, " + functionName + " was redefined meanwhile.");
+                return null;
             }
-        } catch (IOException | jasError ex) {
-            System.err.println("ERROR:" + ex.getMessage());
+            return true;
+        } catch (Throwable ex) {
+            report("ERROR: compiler couldn't find it's own method. This should not happen.");
+            return null;
         }
-        System.err.println("COMPILE FAILED.");
-        return null;
+    }
+
+    // compile errors are not printed for QUIET compiles, such as those made by tiering
+    private void report(String message) {
+        if (!quiet)
+            System.err.println(message);
     }
 
     private void compileSubtree(Object tree, CodeAttr fn, StackMap sm) throws Exception {
         try {
-            if (tree instanceof Integer) {
-                pushConstInt((Integer) tree, fn);
-            } else if (tree instanceof Float) {
-                pushConstFloat((float) tree, fn);
-            } else if (tree instanceof String) {
-                String s = (String) tree;
-                if (parms.contains(s.toUpperCase())) {
-                    pushParameter(parms.indexOf(s.toUpperCase()) + 1, fn);
-                } else {
-                    pushConstString(s, fn);
+            Kind kind = kindOf(tree);
+            if (tree instanceof Long) {
+                pushConstLong((Long) tree, fn);
+            } else if ((tree instanceof Double) || (tree instanceof Float) || (tree instanceof BigInteger) ||
+                    (tree instanceof JispRatio)) {
+                pushConstant(tree, fn);
+            } else if (kind == Kind.BOOLEAN) {
+                compileTruth(tree, fn, sm);
+            } else if (kind != Kind.OBJECT) {
+                compileUnboxed(tree, representation(kind), fn, sm);
+                box(kind, fn);
+            } else if (tree instanceof JispSymbol) {
+                JispSymbol s = (JispSymbol) tree;
+                if (typed.containsKey(s)) { // a LET variable
+                    fn.addInsn(new Insn(opc_aload, typed.get(s).slot));
+                } else if (parms.contains(s)) {
+                    pushParameter(parms.indexOf(s), fn);
+                } else { // bound in the context, or global
+                    fn.addInsn(new Insn(opc_aload_0));
+                    pushConstSymbol(s, fn);
+                    fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                            "eval", "(Ljava/lang/Object;)Ljava/lang/Object;")));
                 }
-            } else if (tree instanceof ArrayList) {
-                String fname = ((String) ((ArrayList) tree).get(0)).toUpperCase();
-                switch (fname) {
+            } else if (tree instanceof String) {
+                pushConstString((String) tree, fn);
+            } else if (tree instanceof JispCons) {
+                JispSymbol fname = (JispSymbol) ((JispCons) tree).car();
+                switch (fname.getName()) {
                     case "IF":
-                        handleIfStatement((ArrayList) tree, fn, sm);
+                        handleIfStatement((JispCons) tree, fn, sm);
                         break;
 
                     case "QUOTE":
-                        handleQuoteStatement((ArrayList) tree, fn, sm);
+                        handleQuoteStatement((JispCons) tree, fn, sm);
                         break;
 
                     case "DOTIMES":
-                        handleDoTimesStatement((ArrayList) tree, fn, sm);
+                        handleDoTimesStatement((JispCons) tree, fn, sm);
                         break;
 
                     case "DOLIST":
-                        handleDoListStatement((ArrayList) tree, fn, sm);
+                        handleDoListStatement((JispCons) tree, fn, sm);
                         break;
 
                     case "DO":
-                        handleDoStatement((ArrayList) tree, fn, sm);
+                        handleDoStatement((JispCons) tree, fn, sm);
                         break;
 
                     case "PROGN":
-                        handlePrognStatement((ArrayList) tree, fn, sm);
+                        handlePrognStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "AREF":
+                        handleArefStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "SETF":
+                        handleSetfStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "LET":
+                        handleLetStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "COND":
+                        handleCondStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "AND":
+                        handleAndStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "OR":
+                        handleOrStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "SET":
+                        handleSetStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "LAMBDA":
+                        handleLambdaStatement((JispCons) tree, fn, sm);
+                        break;
+
+                    case "+":
+                    case "-":
+                    case "*":
+                    case "<":
+                    case ">":
+                    case "<=":
+                    case ">=":
+                    case "=":
+                    case "1+":
+                    case "1-":
+                        compileArithmetic(fname, (JispCons) tree, fn, sm);
+                        break;
+
+                    case "THE": // a type kindOf does not know, which the builtin does not check either
+                        compileSubtree(((JispCons) tree).nth(2), fn, sm);
                         break;
 
                     default:
-                        callSymbolTableFunction(fname, (ArrayList) tree, fn, sm);
+                        callSymbolTableFunction(fname, (JispCons) tree, fn, sm);
                         break;
                 }
+            } else if (tree == null) {
+                fn.addInsn(new Insn(opc_aconst_null));
             }
         } catch (jasError err) {
             err.printStackTrace();
         }
     }
 
-    private void pushConstInt(Integer x, CodeAttr fn) throws jasError {
-        fn.addInsn(new Insn(opc_new, new ClassCP("java/lang/Integer")));
-        fn.addInsn(new Insn(opc_dup));
-        fn.addInsn(new Insn(opc_ldc, new IntegerCP(x)));
-        fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/lang/Integer",
-                "<init>", "(I)V")));
+    private void pushConstLong(Long x, CodeAttr fn) throws jasError {
+        pushConstant(x, fn);
     }
 
     private void pushConstFloat(Float x, CodeAttr fn) throws jasError {
-        fn.addInsn(new Insn(opc_new, new ClassCP("java/lang/Float")));
-        fn.addInsn(new Insn(opc_ldc, new FloatCP(x)));
-        fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/lang/Float",
-                "<init>", "(F)V")));
+        pushConstant(x, fn);
     }
 
-    private void pushParameter(int parno, CodeAttr fn) throws jasError {
+    // the field holding value, added to the class for the first use of an equal constant
+    private void pushConstant(Object value, CodeAttr fn) throws jasError {
+        int index = -1;
+        for (int i = 0; (i < constants.size()) && (index < 0); i++) {
+            Object c = constants.get(i);
+            if ((value instanceof JispCons) ? (c == value) : ((c.getClass() == value.getClass()) && c.equals(value)))
+                index = i;
+        }
+        if (index < 0) {
+            index = constants.size();
+            constants.add(value);
+        }
+        fn.addInsn(new Insn(opc_getstatic, new FieldCP(className, "K" + index, descriptor(value))));
+    }
+
+    // symbols are kept as such, for setLocal
+    private static String descriptor(Object value) {
+        return (value instanceof JispSymbol) ? "Lcom/ljc/JispSymbol;" : "Ljava/lang/Object;";
+    }
+
+    // the fields and the static initialiser that sets them
+    private void addConstants(ClassEnv cf) throws jasError {
+        CodeAttr init = new CodeAttr();
+        int stack = 0;
+        for (int i = 0; i < constants.size(); i++) {
+            String type = descriptor(constants.get(i));
+            cf.addField(new Var((short) (ACC_PRIVATE | ACC_STATIC | ACC_FINAL), new AsciiCP("K" + i),
+                    new AsciiCP(type), null));
+            stack = Math.max(stack, construct(constants.get(i), init));
+            init.addInsn(new Insn(opc_putstatic, new FieldCP(className, "K" + i, type)));
+        }
+        init.addInsn(new Insn(opc_return));
+        init.setStackSize((short) stack);
+        init.setVarSize((short) 0);
+        cf.addMethod(new Method((short) ACC_STATIC, new AsciiCP("<clinit>"), new AsciiCP("()V"),
+                init, new ExceptAttr()));
+    }
+
+    // whether x can be made by construct: numbers, strings, symbols and lists of them
+    private static boolean constant(Object x) {
+        while (x instanceof JispCons) {
+            if (!constant(((JispCons) x).car()))
+                return false;
+            x = ((JispCons) x).cdr();
+        }
+        return (x == null) || (x instanceof Long) || (x instanceof Double) || (x instanceof Float) ||
+                (x instanceof BigInteger) || (x instanceof JispRatio) || (x instanceof String) ||
+                (x instanceof JispSymbol);
+    }
+
+    /* pushes a copy of x, made as the reader would have; gives the stack it needs. A list's
+       elements are collected in an ArrayList, so only nesting takes more stack */
+    private static int construct(Object x, CodeAttr fn) throws jasError {
+        if (x == null) {
+            fn.addInsn(new Insn(opc_aconst_null));
+        } else if (x instanceof Long) {
+            fn.addInsn(new Insn(opc_ldc2_w, new LongCP((Long) x)));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Long",
+                    "valueOf", "(J)Ljava/lang/Long;")));
+            return 2;
+        } else if (x instanceof Double) {
+            fn.addInsn(new Insn(opc_ldc2_w, new DoubleCP((Double) x)));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Double",
+                    "valueOf", "(D)Ljava/lang/Double;")));
+            return 2;
+        } else if (x instanceof Float) {
+            fn.addInsn(new Insn(opc_ldc, new FloatCP((Float) x)));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Float",
+                    "valueOf", "(F)Ljava/lang/Float;")));
+        } else if (x instanceof BigInteger) {
+            fn.addInsn(new Insn(opc_new, new ClassCP("java/math/BigInteger")));
+            fn.addInsn(new Insn(opc_dup));
+            fn.addInsn(new Insn(opc_ldc, new StringCP(x.toString())));
+            fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/math/BigInteger",
+                    "<init>", "(Ljava/lang/String;)V")));
+            return 3;
+        } else if (x instanceof JispRatio) { // read back from its printed form
+            fn.addInsn(new Insn(opc_ldc, new StringCP(x.toString())));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispNumbers",
+                    "parse", "(Ljava/lang/CharSequence;)Ljava/lang/Object;")));
+        } else if (x instanceof String) {
+            fn.addInsn(new Insn(opc_ldc, new StringCP((String) x)));
+        } else if (x instanceof JispSymbol) {
+            fn.addInsn(new Insn(opc_ldc, new StringCP(((JispSymbol) x).getName())));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispSymbol",
+                    "intern", "(Ljava/lang/String;)Lcom/ljc/JispSymbol;")));
+        } else {
+            int stack = 2;
+            fn.addInsn(new Insn(opc_new, new ClassCP("java/util/ArrayList")));
+            fn.addInsn(new Insn(opc_dup));
+            fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/util/ArrayList", "<init>", "()V")));
+            Object tail = x;
+            for (; tail instanceof JispCons; tail = ((JispCons) tail).cdr()) {
+                fn.addInsn(new Insn(opc_dup));
+                stack = Math.max(stack, 2 + construct(((JispCons) tail).car(), fn));
+                fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/List", "add", "(Ljava/lang/Object;)Z"), 2));
+                fn.addInsn(new Insn(opc_pop)); //throw away the bool
+            }
+            stack = Math.max(stack, 1 + construct(tail, fn));
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispCons",
+                    "fromList", "(Ljava/util/List;Ljava/lang/Object;)Ljava/lang/Object;")));
+            return stack;
+        }
+        return 1;
+    }
+
+    // the type of call, and of the call sites of compiled callers, for argc arguments
+    static String callDescriptor(int argc) {
+        return "(Lcom/ljc/JispInterp;" + "Ljava/lang/Object;".repeat(argc) + ")Ljava/lang/Object;";
+    }
+
+    // evaluate: each argument in the list is evaluated once, and call is passed the values
+    private void evaluateArguments(CodeAttr fn, String name) throws jasError {
         fn.addInsn(new Insn(opc_aload_1));
-        fn.addInsn(new Insn(opc_aload_0));
-        fn.addInsn(new Insn(opc_ldc, new IntegerCP(parno)));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/util/ArrayList",
-                "get", "(I)Ljava/lang/Object;")));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
-                "eval", "(Ljava/lang/Object;)Ljava/lang/Object;")));
+        for (int parno = 0; parno < parms.size(); parno++) {
+            fn.addInsn(new Insn(opc_aload_1));
+            fn.addInsn(new Insn(opc_aload_0));
+            fn.addInsn(new Insn(opc_ldc, new IntegerCP(parno + 1)));
+            fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispCons",
+                    "nth", "(I)Ljava/lang/Object;")));
+            fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                    "eval", "(Ljava/lang/Object;)Ljava/lang/Object;")));
+        }
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP(name, "call", callDescriptor(parms.size()))));
+        fn.addInsn(new Insn(opc_areturn));
+        fn.setStackSize((short) (parms.size() + 3));
+        fn.setVarSize((short) 2);
+    }
+
+    private void pushParameter(int parno, CodeAttr fn) throws jasError {
+        fn.addInsn(new Insn(opc_aload, 1 + parno));
+    }
+
+    // a local variable for a loop, of a type as the verifier writes it, until freeLocals
+    private int newLocal(String type) {
+        states.push(type);
+        int slot = loopdepth;
+        loopdepth += slots(type);
+        maxlocals = Math.max(maxlocals, loopdepth);
+        return slot;
+    }
+
+    private void freeLocals(int n) {
+        for (int i = 0; i < n; i++)
+            loopdepth -= slots(states.pop());
+    }
+
+    // longs and doubles take two local variables
+    private static int slots(String type) {
+        return (type.equals("Long") || type.equals("Double")) ? 2 : 1;
+    }
+
+    // a value of type stays on the operand stack while more code is compiled, until release
+    private void hold(String type) {
+        operands.push(type);
+    }
+
+    private void release(int n) {
+        for (int i = 0; i < n; i++)
+            operands.pop();
+    }
+
+    /* the stack map frame at a jump target: the types of every local variable in use there,
+       context, the parameters and the loop variables, and of what is held on the stack */
+    private VerifyFrame frame(Label target, StackMap sm) throws jasError {
+        VerifyFrame vf = new VerifyFrame(new Vector());
+        vf.setOffset(target);
+        vf.addLocalsItem("Object", "com/ljc/JispInterp");
+        for (int i = 0; i < parms.size(); i++)
+            vf.addLocalsItem("Object", "java/lang/Object");
+        for (String s : states) {
+            if (Character.isUpperCase(s.charAt(0)))
+                vf.addLocalsItem(s, null);
+            else
+                vf.addLocalsItem("Object", s);
+        }
+        for (String s : operands) {
+            if (Character.isUpperCase(s.charAt(0)))
+                vf.addStackItem(s, null);
+            else
+                vf.addStackItem("Object", s);
+        }
+        sm.addFrame(vf);
+        return vf;
     }
 
     private void pushConstString(String s, CodeAttr fn) throws jasError {
         fn.addInsn(new Insn(opc_ldc, new StringCP(s)));
     }
 
+    private void pushConstSymbol(JispSymbol s, CodeAttr fn) throws jasError {
+        pushConstant(s, fn);
+    }
+
     private void quoteSubtree(Object tree, CodeAttr fn, StackMap sm) throws Exception {
         try {
-            if (tree instanceof Integer) {
-                pushConstInt((Integer) tree, fn);
+            if (tree instanceof Long) {
+                pushConstLong((Long) tree, fn);
             } else if (tree instanceof Float) {
                 pushConstFloat((float) tree, fn);
+            } else if ((tree instanceof Double) || (tree instanceof BigInteger) || (tree instanceof JispRatio)) {
+                pushConstant(tree, fn);
+            } else if (tree instanceof JispSymbol) {
+                pushConstSymbol((JispSymbol) tree, fn);
             } else if (tree instanceof String) {
-                String s = (String) tree;
-                if (parms.contains(s)) {
-                    pushParameter(parms.indexOf(s) + 1, fn);
-                } else {
-                    pushConstString(s, fn);
-                }
-            } else if (tree instanceof ArrayList) {
+                pushConstString((String) tree, fn);
+            } else if (tree instanceof JispCons) {
                 fn.addInsn(new Insn(opc_new, new ClassCP("java/util/ArrayList")));
                 fn.addInsn(new Insn(opc_dup));
                 fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/util/ArrayList", "<init>", "()V")));
-                for (Object item : (ArrayList) tree) {
+                for (Object item : (JispCons) tree) {
                     fn.addInsn(new Insn(opc_dup));
                     quoteSubtree(item, fn, sm);
                     fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/List", "add", "(Ljava/lang/Object;)Z"), 2));
                     fn.addInsn(new Insn(opc_pop)); //throw away the bool
                 }
+                pushFromList(fn);
+            } else if (tree == null) {
+                fn.addInsn(new Insn(opc_aconst_null));
             }
         } catch (jasError err) {
             err.printStackTrace();
         }
     }
 
-    private void handleQuoteStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
+    // the quoted form itself, as QUOTE gives it, unless it holds something construct cannot make
+    private void handleQuoteStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        if ((func.length() == 2) && constant(func.nth(1))) {
+            if (func.nth(1) == null)
+                fn.addInsn(new Insn(opc_aconst_null));
+            else
+                pushConstant(func.nth(1), fn);
+            return;
+        }
         fn.addInsn(new Insn(opc_new, new ClassCP("java/util/ArrayList")));
         fn.addInsn(new Insn(opc_dup));
         fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/util/ArrayList", "<init>", "()V")));
@@ -249,221 +633,1098 @@ class JispCompiler {
             fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/List", "add", "(Ljava/lang/Object;)Z"), 2));
             fn.addInsn(new Insn(opc_pop)); //throw away the bool
         }
-        fn.addInsn(new Insn(opc_aload_1));
+        pushFromList(fn);
+        fn.addInsn(new Insn(opc_aload_0));
         fn.addInsn(new Insn(opc_invokedynamic,
                 new InvokeDynamicCP("com/ljc/JispInterp", "bootstrapCompiledCall",
                         "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
-                        "QUOTE", "(Ljava/util/ArrayList;Lcom/ljc/JispInterp;)Ljava/lang/Object;", 0)));
+                        "QUOTE", "(Lcom/ljc/JispCons;Lcom/ljc/JispInterp;)Ljava/lang/Object;", 0)));
     }
 
-    private void callSymbolTableFunction(String fname, ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
-        String name = JispInterp.getName(fname);
+    // the elements are collected in an ArrayList and turned into a list in one go
+    private void pushFromList(CodeAttr fn) throws jasError {
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispCons",
+                "fromList", "(Ljava/util/List;)Lcom/ljc/JispCons;")));
+    }
+
+    /* a builtin is passed its form as a list, as the interpreter does, a variable held in a
+       local is called through callLocal, anything else is called with the values of its
+       arguments, linked to its call with that many. The builtin
+       evaluates the list's elements itself, so a variable it can look up in the context and
+       a quoted constant are passed as they are, and a value computed here is passed quoted
+       unless it evaluates to itself, see JispCons.quote */
+    private void callSymbolTableFunction(JispSymbol fname, JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        String name = fname.getJavaName();
+        if ((fname.getBuiltin() == null) && local(fname)) {
+            int argc = func.length() - 1;
+            pushConstSymbol(fname, fn);
+            hold("com/ljc/JispSymbol");
+            compileSubtree(fname, fn, sm);
+            hold("java/lang/Object");
+            fn.addInsn(new Insn(opc_aload_0));
+            hold("com/ljc/JispInterp");
+            fn.addInsn(new Insn(opc_ldc, new IntegerCP(argc)));
+            fn.addInsn(new Insn(opc_anewarray, new ClassCP("java/lang/Object")));
+            hold("[Ljava/lang/Object;");
+            for (int i = 0; i < argc; i++) {
+                fn.addInsn(new Insn(opc_dup));
+                fn.addInsn(new Insn(opc_ldc, new IntegerCP(i)));
+                hold("[Ljava/lang/Object;");
+                hold("Integer");
+                compileSubtree(func.nth(i + 1), fn, sm);
+                release(2);
+                fn.addInsn(new Insn(opc_aastore));
+            }
+            release(4);
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispInterp", "callLocal",
+                    "(Lcom/ljc/JispSymbol;Ljava/lang/Object;Lcom/ljc/JispInterp;[Ljava/lang/Object;)Ljava/lang/Object;")));
+            return;
+        }
+        if (fname.getBuiltin() == null) {
+            int argc = func.length() - 1;
+            fn.addInsn(new Insn(opc_aload_0));
+            hold("com/ljc/JispInterp");
+            for (int i = 1; i <= argc; i++) {
+                compileSubtree(func.nth(i), fn, sm);
+                hold("java/lang/Object");
+            }
+            release(argc + 1);
+            fn.addInsn(new Insn(opc_invokedynamic,
+                    new InvokeDynamicCP("com/ljc/JispInterp", "bootstrapCompiledCall",
+                            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+                            name, callDescriptor(argc), 0)));
+            return;
+        }
         fn.addInsn(new Insn(opc_new, new ClassCP("java/util/ArrayList")));
         fn.addInsn(new Insn(opc_dup));
         fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/util/ArrayList", "<init>", "()V")));
-        for (Object aFunc : func) {
+        fn.addInsn(new Insn(opc_dup));
+        pushConstSymbol(fname, fn);
+        fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/List", "add", "(Ljava/lang/Object;)Z"), 2));
+        fn.addInsn(new Insn(opc_pop)); //throw away the bool
+        hold("java/util/ArrayList");
+        hold("java/util/ArrayList");
+        for (Object aFunc : new JispArguments(func)) {
             fn.addInsn(new Insn(opc_dup));
-            compileSubtree(aFunc, fn, sm);
+            if ((aFunc instanceof JispCons) && (((JispCons) aFunc).car() == JispSymbol.QUOTE) && constant(aFunc)) {
+                pushConstant(aFunc, fn);
+            } else if ((aFunc instanceof JispSymbol) && !local((JispSymbol) aFunc)) {
+                pushConstSymbol((JispSymbol) aFunc, fn);
+            } else {
+                compileSubtree(aFunc, fn, sm);
+                if (((aFunc instanceof JispSymbol) || (aFunc instanceof JispCons)) && (kindOf(aFunc) == Kind.OBJECT))
+                    fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispCons",
+                            "quote", "(Ljava/lang/Object;)Ljava/lang/Object;")));
+            }
             fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/List", "add", "(Ljava/lang/Object;)Z"), 2));
             fn.addInsn(new Insn(opc_pop)); //throw away the bool
         }
-        fn.addInsn(new Insn(opc_aload_1));
+        release(2);
+        pushFromList(fn);
+        fn.addInsn(new Insn(opc_aload_0));
+        fn.addInsn(new Insn(opc_invokedynamic,
+                new InvokeDynamicCP("com/ljc/JispInterp", "bootstrapCompiledCall",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+                        name, "(Lcom/ljc/JispCons;Lcom/ljc/JispInterp;)Ljava/lang/Object;", 0)));
+    }
+
+    /* arithmetic kindOf cannot type: two operands, or one for 1+ and 1-, go straight to the
+       helpers in JispNumbers that do what the builtins do with them, anything else to the
+       builtin */
+    private void compileArithmetic(JispSymbol fname, JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        String name = fname.getName();
+        int argc = func.length() - 1;
+        if (argc != (name.startsWith("1") ? 1 : 2)) {
+            callSymbolTableFunction(fname, func, fn, sm);
+            return;
+        }
+        for (int i = 1; i <= argc; i++) {
+            compileSubtree(func.nth(i), fn, sm);
+            hold("java/lang/Object");
+        }
+        release(argc);
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispNumbers", helper(name),
+                "(" + "Ljava/lang/Object;".repeat(argc) + ")Ljava/lang/Object;")));
+    }
+
+    private static String helper(String name) {
+        switch (name) {
+            case "+":
+                return "plus";
+            case "-":
+                return "minus";
+            case "*":
+                return "times";
+            case "<":
+                return "less";
+            case ">":
+                return "greater";
+            case "<=":
+                return "lessEqual";
+            case ">=":
+                return "greaterEqual";
+            case "=":
+                return "equal";
+            case "1+":
+                return "onePlus";
+            default:
+                return "oneMinus";
+        }
+    }
+
+    // whether var is held in a local here, a parameter or a LET or loop variable
+    private boolean local(JispSymbol var) {
+        return typed.containsKey(var) || parms.contains(var);
+    }
+
+    /* var is bound in the context from here on, so a parameter of that name must not be
+       found in its slot, as in compileMethod. Whoever binds it puts parms back after */
+    private void hideParameter(JispSymbol var) {
+        int i = parms.indexOf(var);
+        if (i >= 0)
+            parms.set(i, null);
+    }
+
+    // a special form the compiler does not take on is passed whole to its builtin, unevaluated
+    private void callSpecialForm(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        if (!constant(func)) {
+            callSymbolTableFunction((JispSymbol) func.car(), func, fn, sm);
+            return;
+        }
+        pushConstant(func, fn);
+        fn.addInsn(new Insn(opc_checkcast, new ClassCP("com/ljc/JispCons")));
+        fn.addInsn(new Insn(opc_aload_0));
         fn.addInsn(new Insn(opc_invokedynamic,
                 new InvokeDynamicCP("com/ljc/JispInterp", "bootstrapCompiledCall",
                         "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
-                        name, "(Ljava/util/ArrayList;Lcom/ljc/JispInterp;)Ljava/lang/Object;", 0)));
+                        ((JispSymbol) func.car()).getJavaName(), "(Lcom/ljc/JispCons;Lcom/ljc/JispInterp;)Ljava/lang/Object;", 0)));
     }
 
-    private void handleIfStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
+    private void handleIfStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
         Label ifl = new Label("if" + Integer.toString(labelno));
         Label fil = new Label("fi" + Integer.toString(labelno));
         labelno++;
-        compileSubtree(func.get(1), fn, sm);
-        fn.addInsn(new Insn(opc_ifnull, ifl));
-        compileSubtree(func.get(2), fn, sm); // true branch
+        compileCondition(func.nth(1), ifl, fn, sm);
+        compileSubtree(func.nth(2), fn, sm); // true branch
         fn.addInsn(new Insn(opc_goto, fil));
         fn.addInsn(ifl);
-        compileSubtree(func.get(3), fn, sm); // false branch
+        compileSubtree(func.nth(3), fn, sm); // false branch
         fn.addInsn(fil);
 
-        VerifyFrame vf = new VerifyFrame(new Vector());
-        vf.setOffset(ifl);
-        sm.addFrame(vf);
-
-        VerifyFrame vf2 = new VerifyFrame(new Vector());
-        vf2.setOffset(fil);
-        vf2.addStackItem("Object", "java/lang/Object");
-        sm.addFrame(vf2);
+        frame(ifl, sm);
+        frame(fil, sm).addStackItem("Object", "java/lang/Object");
     }
 
     private void pushSaveLocals(CodeAttr fn) throws jasError {
-        fn.addInsn(new Insn(opc_aload_1));
+        fn.addInsn(new Insn(opc_aload_0));
         fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp", "saveLocals", "()V")));
     }
 
     private void pushRestoreLocals(CodeAttr fn) throws jasError {
-        fn.addInsn(new Insn(opc_aload_1));
+        fn.addInsn(new Insn(opc_aload_0));
         fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp", "restoreLocals", "()V")));
     }
 
-    private void handleDoTimesStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
-        func.remove(0);
-        ArrayList parms = (ArrayList) func.remove(0);
-        Label loop = new Label("loop" + Integer.toString(labelno++));
+    /* The count is evaluated once into a local, and the counter is an unboxed local tested
+       against it before each pass: an int when the count is known to fit one, a long
+       otherwise. A count that is not a fixnum skips the loop, as in the interpreter. The
+       counter is only also bound in the context when the body has a form that needs it */
+    private void handleDoTimesStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        JispCons parms = (JispCons) func.nth(1);
+        JispSymbol var = (JispSymbol) parms.car();
+        List body = new JispArguments(func, 2);
+        Label test = new Label("loop" + Integer.toString(labelno));
+        Label done = new Label("done" + Integer.toString(labelno++));
+        boolean bound = needsBinding(var, body, true);
 
-        int iterator = loopdepth++;
-        int stop = loopdepth++;
-        states.push("Integer");
-        states.push("Integer");
-
-        pushSaveLocals(fn);
-        fn.addInsn(new Insn(opc_iconst_0));
-        fn.addInsn(new Insn(opc_istore, iterator));
-        compileSubtree(parms.get(1), fn, sm);
-        fn.addInsn(new Insn(opc_checkcast, new ClassCP("java/lang/Number")));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/lang/Number",
-                "intValue", "()I")));
-        fn.addInsn(new Insn(opc_istore, stop));
+        // an int counter while the count is known to fit, a long one otherwise
+        Kind count = kindOf(parms.nth(1));
+        boolean small = (count == Kind.INT);
+        String type = small ? "Integer" : "Long";
+        int stop = newLocal(type);
+        if (count == Kind.INT) {
+            compileUnboxed(parms.nth(1), Kind.LONG, fn, sm);
+            fn.addInsn(new Insn(opc_l2i));
+        } else if (count == Kind.LONG) {
+            compileUnboxed(parms.nth(1), Kind.LONG, fn, sm);
+        } else { // as the interpreter, anything but a fixnum is refused and the loop skipped
+            compileSubtree(parms.nth(1), fn, sm);
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispNumbers",
+                    "count", "(Ljava/lang/Object;)J")));
+        }
+        fn.addInsn(new Insn(small ? opc_istore : opc_lstore, stop));
+        int iterator = newLocal(type);
+        if (small) {
+            fn.addInsn(new Insn(opc_iconst_0));
+            fn.addInsn(new Insn(opc_istore, iterator));
+        } else {
+            fn.addInsn(new Insn(opc_lconst_0));
+            fn.addInsn(new Insn(opc_lstore, iterator));
+        }
+        if (bound)
+            pushSaveLocals(fn);
+        Typed outer = typed.put(var, new Typed(iterator, small ? Kind.INT : Kind.LONG, small));
 
-        // start of loop
-        fn.addInsn(loop);
-        fn.addInsn(new Insn(opc_aload_1));
-        pushConstString((String) parms.get(0), fn);
-        fn.addInsn(new Insn(opc_new, new ClassCP("java/lang/Integer")));
-        fn.addInsn(new Insn(opc_dup));
-        fn.addInsn(new Insn(opc_iload, iterator));
-        fn.addInsn(new Insn(opc_invokenonvirtual, new MethodCP("java/lang/Integer",
-                "<init>", "(I)V")));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
-                "setLocal", "(Ljava/lang/String;Ljava/lang/Object;)V")));
-        for (Object x : func) {
+        fn.addInsn(test);
+        if (small) {
+            fn.addInsn(new Insn(opc_iload, iterator));
+            fn.addInsn(new Insn(opc_iload, stop));
+            fn.addInsn(new Insn(opc_if_icmpge, done));
+        } else {
+            fn.addInsn(new Insn(opc_lload, iterator));
+            fn.addInsn(new Insn(opc_lload, stop));
+            fn.addInsn(new Insn(opc_lcmp));
+            fn.addInsn(new Insn(opc_ifge, done));
+        }
+        if (bound) {
+            fn.addInsn(new Insn(opc_aload_0));
+            pushConstSymbol(var, fn);
+            compileSubtree(var, fn, sm);
+            fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                    "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+        }
+        for (Object x : body) {
             compileSubtree(x, fn, sm);
             fn.addInsn(new Insn(opc_pop)); //throw out the result
         }
-        fn.addInsn(new IincInsn(iterator, 1));
-        fn.addInsn(new Insn(opc_iload, iterator));
-        fn.addInsn(new Insn(opc_iload, stop));
-        fn.addInsn(new Insn(opc_if_icmplt, loop)); // if v1 < v2
-        pushRestoreLocals(fn);
+        if (small) {
+            fn.addInsn(new IincInsn(iterator, 1));
+        } else {
+            fn.addInsn(new Insn(opc_lload, iterator));
+            fn.addInsn(new Insn(opc_lconst_1));
+            fn.addInsn(new Insn(opc_ladd));
+            fn.addInsn(new Insn(opc_lstore, iterator));
+        }
+        fn.addInsn(new Insn(opc_goto, test));
+        fn.addInsn(done);
+        if (bound)
+            pushRestoreLocals(fn);
         fn.addInsn(new Insn(opc_aconst_null)); //returns null
 
-        VerifyFrame vf = new VerifyFrame(new Vector());
-        vf.setOffset(loop);
-        vf.addLocalsItem("Object", "java/util/ArrayList");
-        vf.addLocalsItem("Object", "com/ljc/JispInterp");
-        for (String s : states) {
-            if (Character.isUpperCase(s.charAt(0)))
-                vf.addLocalsItem(s, null);
-            else
-                vf.addLocalsItem("Object", s);
-        }
-        sm.addFrame(vf);
-        loopdepth -= 2;
+        frame(test, sm);
+        frame(done, sm);
+        restore(var, outer);
+        freeLocals(2);
     }
 
-    private void handleDoListStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
-        func.remove(0);
-        ArrayList parms = (ArrayList) func.remove(0);
-        Label loop = new Label("loop" + Integer.toString(labelno++));
+    private void handleDoListStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        JispCons parms = (JispCons) func.nth(1);
+        List body = new JispArguments(func, 2);
+        Label loop = new Label("loop" + Integer.toString(labelno));
+        Label done = new Label("done" + Integer.toString(labelno++));
 
-        int iterator = loopdepth++;
-        states.push("java/util/ArrayList");
+        int iterator = newLocal("java/util/Iterator");
 
+        // walk the list with an iterator, which also copes with an empty list
         pushSaveLocals(fn);
-        compileSubtree(parms.get(1), fn, sm);
-        fn.addInsn(new Insn(opc_checkcast, new ClassCP("java/util/ArrayList")));
+        compileSubtree(parms.nth(1), fn, sm);
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispArrays",
+                "elements", "(Ljava/lang/Object;)Ljava/lang/Iterable;")));
+        fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/lang/Iterable", "iterator", "()Ljava/util/Iterator;"), 1));
         fn.addInsn(new Insn(opc_astore, iterator));
+        Typed outer = typed.remove(parms.car());
+        ArrayList<JispSymbol> outerParms = new ArrayList<>(this.parms);
+        hideParameter((JispSymbol) parms.car());
 
         fn.addInsn(loop);
-        fn.addInsn(new Insn(opc_aload_1));
-        pushConstString((String) parms.get(0), fn);
         fn.addInsn(new Insn(opc_aload, iterator));
-        fn.addInsn(new Insn(opc_iconst_0));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/util/ArrayList",
-                "remove", "(I)Ljava/lang/Object;")));
+        fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/Iterator", "hasNext", "()Z"), 1));
+        fn.addInsn(new Insn(opc_ifeq, done));
+        fn.addInsn(new Insn(opc_aload_0));
+        pushConstSymbol((JispSymbol) parms.car(), fn);
+        fn.addInsn(new Insn(opc_aload, iterator));
+        fn.addInsn(new InvokeinterfaceInsn(new InterfaceCP("java/util/Iterator", "next", "()Ljava/lang/Object;"), 1));
         fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
-                "setLocal", "(Ljava/lang/String;Ljava/lang/Object;)V")));
-        for (Object x : func) {
+                "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+        for (Object x : body) {
             compileSubtree(x, fn, sm);
             fn.addInsn(new Insn(opc_pop)); //throw out result
         }
-        fn.addInsn(new Insn(opc_aload, iterator));
-        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/util/ArrayList",
-                "isEmpty", "()Z")));
-        fn.addInsn(new Insn(opc_ifeq, loop));
+        fn.addInsn(new Insn(opc_goto, loop));
+        fn.addInsn(done);
         pushRestoreLocals(fn);
         fn.addInsn(new Insn(opc_aconst_null)); //returns null
 
-        VerifyFrame vf = new VerifyFrame(new Vector());
-        vf.setOffset(loop);
-        for (String s : states) {
-            if (Character.isUpperCase(s.charAt(0)))
-                vf.addLocalsItem(s, null);
-            else
-                vf.addLocalsItem("Object", s);
-        }
-        sm.addFrame(vf);
-        loopdepth -= 2;
+        frame(loop, sm);
+        frame(done, sm);
+        restore((JispSymbol) parms.car(), outer);
+        this.parms = outerParms;
+        freeLocals(1);
     }
 
-    private void handleDoStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
-        func.remove(0);
-        ArrayList parms = (ArrayList) func.remove(0);
-        ArrayList pred = (ArrayList) func.remove(0);
-        Label loop = new Label("loop" + Integer.toString(labelno++));
+    /* Variables are typed by doubleFloats and counter; the others are bound in the context
+       as before. Like the interpreter's, the initial values and the updates are made one
+       variable after another, and the test comes before each pass */
+    private void handleDoStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        JispCons parms = (JispCons) func.nth(1);
+        Object pred = func.nth(2);
+        List body = new JispArguments(func, 3);
+        Label test = new Label("loop" + Integer.toString(labelno));
+        Label done = new Label("done" + Integer.toString(labelno++));
 
+        HashMap<JispSymbol, Typed> outer = new HashMap<>(typed);
+        ArrayList<JispSymbol> outerParms = new ArrayList<>(this.parms);
+        HashMap<JispSymbol, Kind> kinds = loopKinds(func);
+        int locals = 0;
         pushSaveLocals(fn);
         // initial values
         for (Object x : parms) {
-            ArrayList curvar = (ArrayList) x;
-            fn.addInsn(new Insn(opc_aload_1));
-            pushConstString((String) curvar.get(0), fn);
-            compileSubtree(curvar.get(1), fn, sm); // calculate starting value
-            fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
-                    "setLocal", "(Ljava/lang/String;Ljava/lang/Object;)V")));
+            JispCons curvar = (JispCons) x;
+            JispSymbol var = (JispSymbol) curvar.car();
+            Kind kind = kinds.get(var);
+            if (kind == Kind.OBJECT) {
+                fn.addInsn(new Insn(opc_aload_0));
+                pushConstSymbol(var, fn);
+                hold("com/ljc/JispInterp");
+                hold("com/ljc/JispSymbol");
+                compileSubtree(curvar.nth(1), fn, sm); // calculate starting value
+                release(2);
+                fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                        "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+                typed.remove(var);
+                hideParameter(var);
+            } else {
+                compileUnboxed(curvar.nth(1), kind, fn, sm);
+                int slot = newLocal(typeName(kind));
+                locals++;
+                fn.addInsn(new Insn((kind == Kind.LONG) ? opc_lstore : opc_dstore, slot));
+                typed.put(var, new Typed(slot, kind, false));
+            }
         }
 
         // start of loop
-        fn.addInsn(loop);
-        for (Object x : func) {
+        fn.addInsn(test);
+        compileCondition(pred, done, fn, sm); //continue while this returns true
+        for (Object x : body) {
             compileSubtree(x, fn, sm); // remaining forms left
             fn.addInsn(new Insn(opc_pop)); //throw out result
         }
         // update values
         for (Object x : parms) {
-            ArrayList curvar = (ArrayList) x;
-            fn.addInsn(new Insn(opc_aload_1));
-            pushConstString((String) curvar.get(0), fn);
-            compileSubtree(curvar.get(2), fn, sm); // calculate updated value
-            fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
-                    "setLocal", "(Ljava/lang/String;Ljava/lang/Object;)V")));
+            JispCons curvar = (JispCons) x;
+            JispSymbol var = (JispSymbol) curvar.car();
+            Kind kind = kinds.get(var);
+            if (kind == Kind.OBJECT) {
+                fn.addInsn(new Insn(opc_aload_0));
+                pushConstSymbol(var, fn);
+                hold("com/ljc/JispInterp");
+                hold("com/ljc/JispSymbol");
+                compileSubtree(curvar.nth(2), fn, sm); // calculate updated value
+                release(2);
+                fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                        "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+            } else if (kind == Kind.LONG) {
+                compileCount(var, (JispCons) curvar.nth(2), fn, sm);
+                fn.addInsn(new Insn(opc_lstore, typed.get(var).slot));
+            } else {
+                compileUnboxed(curvar.nth(2), kind, fn, sm);
+                fn.addInsn(new Insn(opc_dstore, typed.get(var).slot));
+            }
         }
-        compileSubtree(pred, fn, sm); //continue until this returns null
-        fn.addInsn(new Insn(opc_ifnonnull, loop));
+        fn.addInsn(new Insn(opc_goto, test));
+        fn.addInsn(done);
         pushRestoreLocals(fn);
         fn.addInsn(new Insn(opc_aconst_null)); //returns null
 
-        VerifyFrame vf = new VerifyFrame(new Vector());
-        vf.setOffset(loop);
-        for (String s : states) {
-            if (Character.isUpperCase(s.charAt(0)))
-                vf.addLocalsItem(s, null);
+        frame(test, sm);
+        frame(done, sm);
+        typed = outer;
+        this.parms = outerParms;
+        freeLocals(locals);
+    }
+
+    private void handlePrognStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        int last = func.length() - 1;
+        for (int i = 1; i < last; i++) {
+            compileSubtree(func.nth(i), fn, sm);
+            fn.addInsn(new Insn(opc_pop)); //throw out the result
+        }
+        compileSubtree(func.nth(last), fn, sm);
+    }
+
+    /* The bindings are kept in locals, where the body reads them directly; only when a builtin
+       in the body needs them in the context are they bound there as well, as the builtin
+       would. All the values are computed before any is bound, and the body is one form */
+    private void handleLetStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        ArrayList<JispSymbol> names = new ArrayList<>();
+        ArrayList<Object> values = new ArrayList<>();
+        for (Object binding : JispCons.elements(func.nth(1))) {
+            Object name = (binding instanceof JispCons) ? ((JispCons) binding).car() : binding;
+            if (!(name instanceof JispSymbol)) {
+                callSpecialForm(func, fn, sm);
+                return;
+            }
+            names.add((JispSymbol) name);
+            values.add((binding instanceof JispCons) ? ((JispCons) binding).nth(1) : null);
+        }
+        Object body = func.nth(2);
+        boolean bound = false;
+        for (JispSymbol name : names)
+            bound |= needsBinding(name, body, false);
+
+        HashMap<JispSymbol, Typed> outer = new HashMap<>(typed);
+        ArrayList<JispSymbol> outerParms = new ArrayList<>(parms);
+        int[] slots = new int[names.size()];
+        Kind[] kinds = new Kind[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            // a number is kept unboxed, unless a LAMBDA would have to capture it
+            kinds[i] = (bound || captured(names.get(i), body)) ? Kind.OBJECT : kindOf(values.get(i));
+            if (!numeric(kinds[i])) {
+                kinds[i] = Kind.OBJECT;
+                compileSubtree(values.get(i), fn, sm);
+                slots[i] = newLocal("java/lang/Object");
+                fn.addInsn(new Insn(opc_astore, slots[i]));
+            } else {
+                compileUnboxed(values.get(i), representation(kinds[i]), fn, sm);
+                slots[i] = newLocal(typeName(kinds[i]));
+                fn.addInsn(new Insn((kinds[i] == Kind.DOUBLE) ? opc_dstore : opc_lstore, slots[i]));
+            }
+        }
+        if (bound)
+            pushSaveLocals(fn);
+        for (int i = 0; i < names.size(); i++) {
+            if (bound) {
+                fn.addInsn(new Insn(opc_aload_0));
+                pushConstSymbol(names.get(i), fn);
+                fn.addInsn(new Insn(opc_aload, slots[i]));
+                fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                        "setLocal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+                typed.remove(names.get(i));
+                hideParameter(names.get(i));
+            } else {
+                typed.put(names.get(i), new Typed(slots[i], kinds[i], false));
+            }
+        }
+        compileSubtree(body, fn, sm);
+        if (bound)
+            pushRestoreLocals(fn);
+        typed = outer;
+        parms = outerParms;
+        freeLocals(names.size());
+    }
+
+    // the first clause whose test is true gives its form, or the test's value if it has none
+    private void handleCondStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        for (Object clause : new JispArguments(func)) {
+            if (!(clause instanceof JispCons)) {
+                callSpecialForm(func, fn, sm);
+                return;
+            }
+        }
+        Label end = new Label("cond" + Integer.toString(labelno++));
+        for (Object x : new JispArguments(func)) {
+            JispCons clause = (JispCons) x;
+            Label next = new Label("clause" + Integer.toString(labelno++));
+            if (clause.length() == 1) {
+                compileSubtree(clause.car(), fn, sm);
+                fn.addInsn(new Insn(opc_dup));
+                fn.addInsn(new Insn(opc_ifnonnull, end));
+                fn.addInsn(new Insn(opc_pop));
+            } else {
+                compileCondition(clause.car(), next, fn, sm);
+                compileSubtree(clause.nth(1), fn, sm);
+                fn.addInsn(new Insn(opc_goto, end));
+                fn.addInsn(next);
+                frame(next, sm);
+            }
+        }
+        fn.addInsn(new Insn(opc_aconst_null));
+        fn.addInsn(end);
+        frame(end, sm).addStackItem("Object", "java/lang/Object");
+    }
+
+    // nil as soon as a form is, otherwise the value of the last
+    private void handleAndStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        int last = func.length() - 1;
+        if (last == 0) { // as the builtin
+            fn.addInsn(new Insn(opc_aconst_null));
+            return;
+        }
+        Label no = new Label("and" + Integer.toString(labelno));
+        Label end = new Label("dna" + Integer.toString(labelno++));
+        for (int i = 1; i < last; i++)
+            compileCondition(func.nth(i), no, fn, sm);
+        compileSubtree(func.nth(last), fn, sm);
+        if (last > 1) {
+            fn.addInsn(new Insn(opc_goto, end));
+            fn.addInsn(no);
+            fn.addInsn(new Insn(opc_aconst_null));
+            fn.addInsn(end);
+            frame(no, sm);
+            frame(end, sm).addStackItem("Object", "java/lang/Object");
+        }
+    }
+
+    // the value of the first form that is not nil, the forms after it are not evaluated
+    private void handleOrStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        int last = func.length() - 1;
+        if (last == 0) {
+            fn.addInsn(new Insn(opc_aconst_null));
+            return;
+        }
+        Label end = new Label("or" + Integer.toString(labelno++));
+        for (int i = 1; i < last; i++) {
+            compileSubtree(func.nth(i), fn, sm);
+            fn.addInsn(new Insn(opc_dup));
+            fn.addInsn(new Insn(opc_ifnonnull, end));
+            fn.addInsn(new Insn(opc_pop));
+        }
+        compileSubtree(func.nth(last), fn, sm);
+        if (last > 1) {
+            fn.addInsn(end);
+            frame(end, sm).addStackItem("Object", "java/lang/Object");
+        }
+    }
+
+    // (set name value) sets the global value of name, which is not evaluated, and gives value
+    private void handleSetStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        if ((func.length() != 3) || !(func.nth(1) instanceof JispSymbol)) {
+            callSpecialForm(func, fn, sm);
+            return;
+        }
+        compileSubtree(func.nth(2), fn, sm);
+        fn.addInsn(new Insn(opc_dup));
+        fn.addInsn(new Insn(opc_aload_0));
+        fn.addInsn(new Insn(opc_swap));
+        pushConstSymbol((JispSymbol) func.nth(1), fn);
+        fn.addInsn(new Insn(opc_swap));
+        fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("com/ljc/JispInterp",
+                "setGlobal", "(Lcom/ljc/JispSymbol;Ljava/lang/Object;)V")));
+    }
+
+    // a LAMBDA compiled into a method of the class being generated, see handleLambdaStatement
+    private static class Lambda {
+        final String method;
+        final ArrayList<JispSymbol> parameters; // the captured variables, then the lambda's own
+        final Object body;
+
+        Lambda(String method, ArrayList<JispSymbol> parameters, Object body) {
+            this.method = method;
+            this.parameters = parameters;
+            this.body = body;
+        }
+    }
+
+    // (lambda (parameters) body) with only plain parameters, which the compiler takes on itself
+    private static boolean simpleLambda(JispCons func) {
+        if ((func.length() != 3) || !((func.nth(1) == null) || (func.nth(1) instanceof JispCons)))
+            return false;
+        for (Object p : JispCons.elements(func.nth(1))) {
+            if (!(p instanceof JispSymbol) || (p == JispSymbol.OPTIONAL))
+                return false;
+        }
+        return constant(func);
+    }
+
+    /* The body becomes a method of this class, whose first parameters are the variables of
+       the enclosing code it uses that are held in locals; the closure JispInterp.closure
+       makes calls it with their values at the time the LAMBDA was evaluated. Those never
+       change after, the ones that do are bound in the context and found through it */
+    private void handleLambdaStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        if (!simpleLambda(func)) {
+            callSpecialForm(func, fn, sm);
+            return;
+        }
+        ArrayList<JispSymbol> own = new ArrayList<>();
+        for (Object p : JispCons.elements(func.nth(1)))
+            own.add((JispSymbol) p);
+        ArrayList<JispSymbol> captured = new ArrayList<>();
+        capture(func.nth(2), own, captured);
+
+        ArrayList<JispSymbol> parameters = new ArrayList<>(captured);
+        parameters.addAll(own);
+        String method = "lambda" + Integer.toString(lambdas.size());
+        lambdas.add(new Lambda(method, parameters, func.nth(2)));
+
+        fn.addInsn(new Insn(opc_aload_0));
+        fn.addInsn(new Insn(opc_ldc, new MethodHandleCP(MethodHandleCP.STATIC_METHOD_KIND,
+                className, method, callDescriptor(parameters.size()))));
+        pushConstant(func, fn);
+        if (captured.isEmpty())
+            fn.addInsn(new Insn(opc_aconst_null));
+        else
+            pushConstant(JispCons.fromList(captured), fn);
+        fn.addInsn(new Insn(opc_ldc, new IntegerCP(captured.size())));
+        fn.addInsn(new Insn(opc_anewarray, new ClassCP("java/lang/Object")));
+        for (int i = 0; i < captured.size(); i++) {
+            fn.addInsn(new Insn(opc_dup));
+            fn.addInsn(new Insn(opc_ldc, new IntegerCP(i)));
+            compileSubtree(captured.get(i), fn, sm);
+            fn.addInsn(new Insn(opc_aastore));
+        }
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispInterp", "closure",
+                "(Lcom/ljc/JispInterp;Ljava/lang/invoke/MethodHandle;Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;")));
+    }
+
+    // whether a LAMBDA in tree uses var
+    private static boolean captured(JispSymbol var, Object tree) {
+        if (!(tree instanceof JispCons))
+            return false;
+        if (((JispCons) tree).car() == JispSymbol.intern("LAMBDA"))
+            return mentions(var, tree);
+        for (Object x : (JispCons) tree) {
+            if (captured(var, x))
+                return true;
+        }
+        return false;
+    }
+
+    // the variables held in locals here, parameters and LET bindings, that tree uses
+    private void capture(Object tree, ArrayList<JispSymbol> own, ArrayList<JispSymbol> captured) {
+        if (tree instanceof JispSymbol) {
+            JispSymbol s = (JispSymbol) tree;
+            boolean local = typed.containsKey(s) ?
+                    (typed.get(s).kind == Kind.OBJECT) :
+                    parms.contains(s);
+            if (local && !own.contains(s) && !captured.contains(s))
+                captured.add(s);
+        } else if ((tree instanceof JispCons) && (((JispCons) tree).car() != JispSymbol.intern("QUOTE"))) {
+            for (Object x : (JispCons) tree)
+                capture(x, own, captured);
+        }
+    }
+
+    /* Array access calls JispArrays directly rather than going through the AREF builtin,
+       so no argument list is built; the typed load or store happens in there. */
+    private void handleArefStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        compileSubtree(func.nth(1), fn, sm); // array
+        hold("java/lang/Object");
+        compileSubtree(func.nth(2), fn, sm); // index
+        release(1);
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("com/ljc/JispArrays",
+                "aref", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;")));
+    }
+
+    /* (setf (aref array index) value) and (setf (gethash key table) value) store directly,
+       any other place is left to the builtin to report */
+    private void handleSetfStatement(JispCons func, CodeAttr fn, StackMap sm) throws Exception {
+        Object place = func.nth(1);
+        String owner = null;
+        String setter = null;
+        if ((func.length() == 3) && (place instanceof JispCons)) {
+            Object head = ((JispCons) place).car();
+            int length = ((JispCons) place).length();
+            if ((head == JispSymbol.intern("AREF")) && (length == 3)) {
+                owner = "com/ljc/JispArrays";
+                setter = "aset";
+            } else if ((head == JispSymbol.intern("GETHASH")) && ((length == 3) || (length == 4))) {
+                owner = "com/ljc/JispHashTable";
+                setter = "puthash";
+            }
+        }
+        if (setter == null) {
+            callSymbolTableFunction((JispSymbol) func.car(), func, fn, sm);
+            return;
+        }
+
+        compileSubtree(((JispCons) place).nth(1), fn, sm); // array or key
+        hold("java/lang/Object");
+        compileSubtree(((JispCons) place).nth(2), fn, sm); // index or table
+        hold("java/lang/Object");
+        compileSubtree(func.nth(2), fn, sm); // value
+        release(2);
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP(owner, setter,
+                "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;")));
+    }
+
+    // what is known of a value's type at compile time; INT is a long known to fit in an int
+    private enum Kind {
+        OBJECT, INT, LONG, DOUBLE, BOOLEAN
+    }
+
+    // a variable held unboxed in a local, an int one for a DOTIMES counter
+    private static class Typed {
+        final int slot;
+        final Kind kind;
+        final boolean isInt;
+
+        Typed(int slot, Kind kind, boolean isInt) {
+            this.slot = slot;
+            this.kind = kind;
+            this.isInt = isInt;
+        }
+    }
+
+    /* the kind of value tree gives: numbers, typed variables, THE and arithmetic on those.
+       Fixnum arithmetic is only unboxed on INT operands, where the result fits in a long */
+    private Kind kindOf(Object tree) {
+        if (tree instanceof Long)
+            return ((Long) tree == ((Long) tree).intValue()) ? Kind.INT : Kind.LONG;
+        if (tree instanceof Double)
+            return Kind.DOUBLE;
+        if (tree instanceof JispSymbol) {
+            Typed t = typed.get(tree);
+            return (t == null) ? Kind.OBJECT : t.kind;
+        }
+        if (!(tree instanceof JispCons) || !(((JispCons) tree).car() instanceof JispSymbol))
+            return Kind.OBJECT;
+
+        JispCons form = (JispCons) tree;
+        int argc = form.length() - 1;
+        switch (((JispSymbol) form.car()).getName()) {
+            case "-":
+            case "+":
+            case "*":
+                if ((argc == 1) && (form.car() == JispSymbol.intern("-"))) // negation
+                    return widened(kindOf(form.nth(1)));
+                if (argc != 2)
+                    return Kind.OBJECT;
+                Kind a = kindOf(form.nth(1));
+                Kind b = kindOf(form.nth(2));
+                if (!numeric(a) || !numeric(b))
+                    return Kind.OBJECT;
+                if ((a == Kind.DOUBLE) || (b == Kind.DOUBLE))
+                    return Kind.DOUBLE;
+                return ((a == Kind.INT) && (b == Kind.INT)) ? Kind.LONG : Kind.OBJECT;
+            case "/": // dividing fixnums can give a ratio
+                return ((argc == 2) && numeric(kindOf(form.nth(1))) && numeric(kindOf(form.nth(2))) &&
+                        ((kindOf(form.nth(1)) == Kind.DOUBLE) || (kindOf(form.nth(2)) == Kind.DOUBLE))) ?
+                        Kind.DOUBLE :
+                        Kind.OBJECT;
+            case "1+":
+            case "1-":
+                return (argc == 1) ? widened(kindOf(form.nth(1))) : Kind.OBJECT;
+            case "<":
+            case ">":
+            case "<=":
+            case ">=":
+            case "=":
+                return ((argc == 2) && numeric(kindOf(form.nth(1))) && numeric(kindOf(form.nth(2)))) ?
+                        Kind.BOOLEAN :
+                        Kind.OBJECT;
+            case "THE":
+                if (argc != 2)
+                    return Kind.OBJECT;
+                Class type = JispArrays.elementType(form.nth(1));
+                if (type == int.class)
+                    return Kind.INT;
+                if (type == long.class)
+                    return Kind.LONG;
+                return (type == double.class) ? Kind.DOUBLE : Kind.OBJECT;
+            default:
+                return Kind.OBJECT;
+        }
+    }
+
+    private static boolean numeric(Kind kind) {
+        return (kind == Kind.INT) || (kind == Kind.LONG) || (kind == Kind.DOUBLE);
+    }
+
+    // the kind of negating or adding one to a value of kind
+    private static Kind widened(Kind kind) {
+        if (kind == Kind.INT)
+            return Kind.LONG;
+        return (kind == Kind.DOUBLE) ? Kind.DOUBLE : Kind.OBJECT;
+    }
+
+    // how a value of kind is held on the stack
+    private static Kind representation(Kind kind) {
+        return (kind == Kind.DOUBLE) ? Kind.DOUBLE : Kind.LONG;
+    }
+
+    private static String typeName(Kind kind) {
+        return (kind == Kind.DOUBLE) ? "Double" : "Long";
+    }
+
+    private void box(Kind kind, CodeAttr fn) throws jasError {
+        if (kind == Kind.DOUBLE)
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Double",
+                    "valueOf", "(D)Ljava/lang/Double;")));
+        else
+            fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Long",
+                    "valueOf", "(J)Ljava/lang/Long;")));
+    }
+
+    // the value of a tree kindOf finds numeric, as a long or a double as rep says
+    private void compileUnboxed(Object tree, Kind rep, CodeAttr fn, StackMap sm) throws Exception {
+        Kind own = representation(kindOf(tree));
+        if (tree instanceof Long) {
+            if (rep == Kind.DOUBLE)
+                fn.addInsn(new Insn(opc_ldc2_w, new DoubleCP((double) (long) (Long) tree)));
             else
-                vf.addLocalsItem("Object", s);
+                fn.addInsn(new Insn(opc_ldc2_w, new LongCP((Long) tree)));
+            return;
         }
-        sm.addFrame(vf);
+        if (tree instanceof Double) {
+            fn.addInsn(new Insn(opc_ldc2_w, new DoubleCP((Double) tree)));
+            return;
+        }
+        if (tree instanceof JispSymbol) {
+            Typed t = typed.get(tree);
+            if (t.isInt) {
+                fn.addInsn(new Insn(opc_iload, t.slot));
+                fn.addInsn(new Insn(opc_i2l));
+            } else {
+                fn.addInsn(new Insn((own == Kind.DOUBLE) ? opc_dload : opc_lload, t.slot));
+            }
+        } else {
+            JispCons form = (JispCons) tree;
+            String op = ((JispSymbol) form.car()).getName();
+            boolean dbl = (own == Kind.DOUBLE);
+            if (op.equals("THE")) {
+                compileSubtree(form.nth(2), fn, sm);
+                if (dbl) {
+                    fn.addInsn(new Insn(opc_checkcast, new ClassCP("java/lang/Double")));
+                    fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/lang/Double",
+                            "doubleValue", "()D")));
+                } else {
+                    fn.addInsn(new Insn(opc_checkcast, new ClassCP("java/lang/Long")));
+                    fn.addInsn(new Insn(opc_invokevirtual, new MethodCP("java/lang/Long",
+                            "longValue", "()J")));
+                    if (kindOf(tree) == Kind.INT) { // fails rather than let the arithmetic overflow
+                        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Math",
+                                "toIntExact", "(J)I")));
+                        fn.addInsn(new Insn(opc_i2l));
+                    }
+                }
+            } else if (op.equals("1+") || op.equals("1-")) {
+                compileUnboxed(form.nth(1), own, fn, sm);
+                fn.addInsn(new Insn(dbl ? opc_dconst_1 : opc_lconst_1));
+                if (op.equals("1+"))
+                    fn.addInsn(new Insn(dbl ? opc_dadd : opc_ladd));
+                else
+                    fn.addInsn(new Insn(dbl ? opc_dsub : opc_lsub));
+            } else if (form.length() == 2) { // negation
+                compileUnboxed(form.nth(1), own, fn, sm);
+                fn.addInsn(new Insn(dbl ? opc_dneg : opc_lneg));
+            } else {
+                compileUnboxed(form.nth(1), own, fn, sm);
+                hold(typeName(own));
+                compileUnboxed(form.nth(2), own, fn, sm);
+                release(1);
+                switch (op) {
+                    case "+":
+                        fn.addInsn(new Insn(dbl ? opc_dadd : opc_ladd));
+                        break;
+                    case "-":
+                        fn.addInsn(new Insn(dbl ? opc_dsub : opc_lsub));
+                        break;
+                    case "*":
+                        fn.addInsn(new Insn(dbl ? opc_dmul : opc_lmul));
+                        break;
+                    default:
+                        fn.addInsn(new Insn(opc_ddiv));
+                        break;
+                }
+            }
+        }
+        if ((own == Kind.LONG) && (rep == Kind.DOUBLE))
+            fn.addInsn(new Insn(opc_l2d));
     }
 
-    private void handlePrognStatement(ArrayList func, CodeAttr fn, StackMap sm) throws Exception {
-        func.remove(0);
-        while (func.size() > 1) {
-            compileSubtree(func.remove(0), fn, sm);
-            fn.addInsn(new Insn(opc_pop)); //throw out the result
+    /* jumps to falseLabel unless test is true; comparisons kindOf can type compare the
+       unboxed values, a NaN making any of them false, and AND tests each form in turn */
+    private void compileCondition(Object test, Label falseLabel, CodeAttr fn, StackMap sm) throws Exception {
+        if (kindOf(test) == Kind.BOOLEAN) {
+            JispCons form = (JispCons) test;
+            String op = ((JispSymbol) form.car()).getName();
+            Kind rep = ((kindOf(form.nth(1)) == Kind.DOUBLE) || (kindOf(form.nth(2)) == Kind.DOUBLE)) ?
+                    Kind.DOUBLE :
+                    Kind.LONG;
+            compileUnboxed(form.nth(1), rep, fn, sm);
+            hold(typeName(rep));
+            compileUnboxed(form.nth(2), rep, fn, sm);
+            release(1);
+            if (rep == Kind.LONG)
+                fn.addInsn(new Insn(opc_lcmp));
+            else if (op.startsWith("<"))
+                fn.addInsn(new Insn(opc_dcmpg));
+            else
+                fn.addInsn(new Insn(opc_dcmpl));
+            switch (op) {
+                case "<":
+                    fn.addInsn(new Insn(opc_ifge, falseLabel));
+                    break;
+                case "<=":
+                    fn.addInsn(new Insn(opc_ifgt, falseLabel));
+                    break;
+                case ">":
+                    fn.addInsn(new Insn(opc_ifle, falseLabel));
+                    break;
+                case ">=":
+                    fn.addInsn(new Insn(opc_iflt, falseLabel));
+                    break;
+                default:
+                    fn.addInsn(new Insn(opc_ifne, falseLabel));
+                    break;
+            }
+        } else if ((test instanceof JispCons) && (((JispCons) test).car() == JispSymbol.intern("AND"))) {
+            for (Object x : new JispArguments((JispCons) test))
+                compileCondition(x, falseLabel, fn, sm);
+        } else {
+            compileSubtree(test, fn, sm);
+            fn.addInsn(new Insn(opc_ifnull, falseLabel));
+        }
+    }
+
+    // a comparison whose value is wanted, T or nil
+    private void compileTruth(Object tree, CodeAttr fn, StackMap sm) throws Exception {
+        Label no = new Label("nil" + Integer.toString(labelno));
+        Label end = new Label("truth" + Integer.toString(labelno++));
+        compileCondition(tree, no, fn, sm);
+        pushConstSymbol(JispSymbol.T, fn);
+        fn.addInsn(new Insn(opc_goto, end));
+        fn.addInsn(no);
+        fn.addInsn(new Insn(opc_aconst_null));
+        fn.addInsn(end);
+
+        frame(no, sm);
+        frame(end, sm).addStackItem("Object", "java/lang/Object");
+    }
+
+    /* The kinds DO's variables can be held as: a double-float stays one when its update is a
+       double-float, and a fixnum counts when its update adds or takes an INT from it, which
+       is made exact. Each variable is assumed to be what its initial value is, and those
+       whose updates do not keep them so are dropped, until all that are left do */
+    private HashMap<JispSymbol, Kind> loopKinds(JispCons func) {
+        HashMap<JispSymbol, Typed> saved = typed;
+        HashMap<JispSymbol, Kind> kinds = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            typed = new HashMap<>(saved);
+            for (Object x : (JispCons) func.nth(1)) { // an initial value sees the variables before it
+                JispCons curvar = (JispCons) x;
+                JispSymbol var = (JispSymbol) curvar.car();
+                Kind kind = Kind.OBJECT;
+                if ((kinds.get(var) != Kind.OBJECT) && (curvar.length() == 3) && !needsBinding(var, func, true)) {
+                    Kind init = kindOf(curvar.nth(1));
+                    if (init == Kind.DOUBLE)
+                        kind = Kind.DOUBLE;
+                    else if (((init == Kind.INT) || (init == Kind.LONG)) && (increment(var, curvar.nth(2)) != null))
+                        kind = Kind.LONG;
+                }
+                kinds.put(var, kind);
+                assume(var, kind);
+            }
+            for (Object x : (JispCons) func.nth(1)) {
+                JispCons curvar = (JispCons) x;
+                JispSymbol var = (JispSymbol) curvar.car();
+                Kind kind = kinds.get(var);
+                if (((kind == Kind.DOUBLE) && (kindOf(curvar.nth(2)) != Kind.DOUBLE)) ||
+                        ((kind == Kind.LONG) && (kindOf(increment(var, curvar.nth(2))) != Kind.INT))) {
+                    kinds.put(var, Kind.OBJECT);
+                    assume(var, Kind.OBJECT);
+                    changed = true;
+                }
+            }
+        }
+        typed = saved;
+        return kinds;
+    }
+
+    private void assume(JispSymbol var, Kind kind) {
+        if (kind == Kind.OBJECT)
+            typed.remove(var);
+        else
+            typed.put(var, new Typed(-1, kind, false));
+    }
+
+    // what (+ var k), (+ k var), (- var k), (1+ var) or (1- var) adds to var or takes from it
+    private static Object increment(JispSymbol var, Object step) {
+        if (!(step instanceof JispCons))
+            return null;
+        JispCons form = (JispCons) step;
+        String op = (form.car() instanceof JispSymbol) ? ((JispSymbol) form.car()).getName() : "";
+        if ((form.length() == 2) && (form.nth(1) == var) && (op.equals("1+") || op.equals("1-")))
+            return 1L;
+        if ((form.length() != 3) || !(op.equals("+") || op.equals("-")))
+            return null;
+        if (form.nth(1) == var)
+            return form.nth(2);
+        return (op.equals("+") && (form.nth(2) == var)) ? form.nth(1) : null;
+    }
+
+    // the next value of a counting DO variable, failing rather than overflowing
+    private void compileCount(JispSymbol var, JispCons step, CodeAttr fn, StackMap sm) throws Exception {
+        String op = ((JispSymbol) step.car()).getName();
+        fn.addInsn(new Insn(opc_lload, typed.get(var).slot));
+        hold("Long");
+        compileUnboxed(increment(var, step), Kind.LONG, fn, sm);
+        release(1);
+        fn.addInsn(new Insn(opc_invokestatic, new MethodCP("java/lang/Math",
+                (op.equals("+") || op.equals("1+")) ? "addExact" : "subtractExact", "(JJ)J")));
+    }
+
+    /* whether var is used inside a form that needs it bound in the context, a builtin that
+       sets it or runs code later, rather than just being passed its value. A compiled LAMBDA
+       captures the value, which is only the binding for a variable that does not change */
+    private static boolean needsBinding(JispSymbol var, Object tree, boolean changes) {
+        if (tree instanceof List) {
+            for (Object x : (List) tree) {
+                if (needsBinding(var, x, changes))
+                    return true;
+            }
+            return false;
+        }
+        if (!(tree instanceof JispCons))
+            return false;
+        JispCons form = (JispCons) tree;
+        if (form.car() instanceof JispSymbol) {
+            switch (((JispSymbol) form.car()).getName()) {
+                case "QUOTE":
+                    return false;
+                case "PUSH":
+                case "POP":
+                case "TIME":
+                case "DEFUN":
+                case "MAPHASH":
+                    return mentions(var, form);
+                case "LAMBDA":
+                    if (changes || !simpleLambda(form))
+                        return mentions(var, form);
+                    break;
+                case "SETF":
+                    if (!(form.nth(1) instanceof JispCons))
+                        return mentions(var, form);
+                    break;
+                default:
+                    break;
+            }
         }
-        compileSubtree(func.remove(0), fn, sm);
+        for (Object x : form) {
+            if (needsBinding(var, x, changes))
+                return true;
+        }
+        return false;
+    }
+
+    /* whether tree may look up a variable other than parameters in the context: any other
+       symbol that is not the head of a form, T, NIL or a keyword, outside a QUOTE */
+    private static boolean freeVariables(Object tree, List<JispSymbol> parameters) {
+        if (tree instanceof JispSymbol)
+            return !parameters.contains(tree) && (tree != JispSymbol.T) && (tree != JispSymbol.NIL) &&
+                    !((JispSymbol) tree).getName().startsWith(":");
+        if (!(tree instanceof JispCons) || (((JispCons) tree).car() == JispSymbol.QUOTE))
+            return false;
+        JispCons form = (JispCons) tree;
+        for (Object x : (form.car() instanceof JispSymbol) ? new JispArguments(form) : form) {
+            if (freeVariables(x, parameters))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean mentions(JispSymbol var, Object tree) {
+        if (tree == var)
+            return true;
+        if (tree instanceof JispCons) {
+            for (Object x : (JispCons) tree) {
+                if (mentions(var, x))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void restore(JispSymbol var, Typed outer) {
+        if (outer == null)
+            typed.remove(var);
+        else
+            typed.put(var, outer);
     }
 
     public enum CompileFlags {
-        DEBUG, PATH
+        DEBUG, PATH, QUIET
     }
 }
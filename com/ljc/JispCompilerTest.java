@@ -0,0 +1,113 @@
+package com.ljc;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+public class JispCompilerTest {
+
+    /* Compiled code against the interpreter. Each case's definitions are evaluated in two
+       interpreters, and in one of them every DEFUN is compiled as soon as it is made; the
+       form then has to print as expected in both. The compiled run must not have called any
+       function interpreted, so a case cannot pass by falling back to the interpreter.
+       Stops at the first case that fails.
+       usage: JispCompilerTest */
+
+    private static int cases;
+
+    public static void main(String... args) {
+        // values passed to builtins are not evaluated again
+        check("(defun f (x) (car x)) (defun k () (f '(a b)))", "(k)", "A");
+        check("(set a 5) (defun g (x) (list x)) (defun k () (g 'a))", "(k)", "(A)");
+        check("(defun g (x y) (cons y x)) (defun k () (g '(b c) 'a))", "(k)", "(A B C)");
+        check("(defun g (x) (list x (car x) (cdr x))) (defun k () (g '(p q)))", "(k)", "((P Q) P (Q))");
+        check("(defun g (list) (list list 'b)) (defun k () (g 'q))", "(k)", "(Q B)");
+        check("(defun g (x) (progn (set st nil) (push x st) st)) (defun k () (g 'a))", "(k)", "(A)");
+        check("(defun g (x) (list (car x) (let ((y (cdr x))) (car y)))) (defun k () (g '(a b)))", "(k)", "(A B)");
+        // and the same straight from the interpreter
+        check("(set a 5) (defun g (x) (list x))", "(g 'a)", "(A)");
+        check("(defun g (x) (list x (car x) (cdr x)))", "(g '(p q))", "((P Q) P (Q))");
+        check("(defun g (x y) (cons y x))", "(g '(b c) 'a)", "(A B C)");
+        // variables not held in locals are looked up, and quoted lists left as they are
+        check("(set gx 7) (defun g (c) (if c gx 0))", "(g t)", "7");
+        check("(defun g (x) '(x y))", "(g 1)", "(X Y)");
+        // a variable holding a function is called, unless there is a function of that name
+        check("(defun mk () (lambda (y) (list y 'b))) (defun ap (f x) (f x))", "(ap (mk) 'a)", "(A B)");
+        check("(defun ap (f x) (f (if x (car x) 0))) (defun k () (ap (lambda (y) (+ y 1)) '(4)))", "(k)", "5");
+        check("(defun f (y) (list 'f y)) (defun mk () (lambda (y) (list y))) (defun ap (f) (f 1))", "(ap (mk))", "(F 1)");
+        // bignum and ratio literals, on their own, as operands and quoted
+        check("(defun g () (progn 1/2))", "(g)", "1/2");
+        check("(defun g () (progn 100000000000000000000))", "(g)", "100000000000000000000");
+        check("(defun g (x) (+ x 1/3))", "(g 1/6)", "1/2");
+        check("(defun g (x) (* x 100000000000000000000)) (defun k () (g 2))", "(k)", "200000000000000000000");
+        check("(defun g () '(1/2 3 100000000000000000000 1.5d0))", "(g)", "(1/2 3 100000000000000000000 1.5)");
+        // a DOTIMES count that is not a small constant is taken as a long, or refused
+        check("(defun g (n) (progn (set c 0) (dotimes (i n) (set c (+ c i))) c))", "(g 5)", "10");
+        check("(defun g (n) (progn (set c 0) (dotimes (i n) (set c (+ c 1))) c))", "(g -4294967295)", "0");
+        check("(defun g () (progn (set c 0) (dotimes (i -4294967295) (set c (+ c 1))) c))", "(g)", "0");
+        check("(defun g (n) (progn (set c 0) (dotimes (i n) (set c (+ c 1))) c))", "(g 100000000000000000000)", "0");
+        // LET and COND on values that are not numbers
+        check("(defun h () (let ((l '(a b))) (car l)))", "(h)", "A");
+        check("(defun h (x) (let ((l (list x 'b)) (s 'c)) (cons s l)))", "(h 'a)", "(C A B)");
+        check("(defun h (x) (cond ((null x) 'none) ((cdr x) (let ((y (cdr x))) y)) (t x)))",
+                "(list (h nil) (h '(a b)) (h '(c)))", "(NONE (B) (C))");
+        // AND and a COND clause with no body evaluate each form once, in a function or not
+        check("(defun g (x) (and x (set c (+ c 1)))) (defun k () (progn (set c 0) (g t) (g t) c))", "(k)", "2");
+        check("(set c 0)", "(progn (and t (set c (+ c 1))) (and t (set c (+ c 1))) c)", "2");
+        check("(defun g () (cond ((set c (+ c 1))) (t 'no))) (defun k () (progn (set c 0) (list (g) c)))", "(k)",
+                "(1 1)");
+        check("(set c 0)", "(list (cond (nil 'no) ((set c (+ c 1)))) c)", "(1 1)");
+        // a DOLIST or DO variable bound in the context hides a parameter of the same name
+        check("(defun g (x) (progn (set r nil) (dolist (x '(a b)) (set r x)) r))", "(g 9)", "B");
+        check("(defun g (x) (progn (do ((x '(a b c) (cdr x)) (n 0 (+ n 1))) (< n 3) (set r (car x))) (list r x)))",
+                "(g 9)", "(C 9)");
+        // EQ, EQL, EQUAL, SQRT, SIN and COS evaluate their arguments, as compiled code expects
+        check("(defun e (a b) (list (equal a b) (eql a b) (eq a b) (eq a a) (eq (car a) 1)))", "(e '(1 2) '(1 2))",
+                "(T NIL NIL T T)");
+        check("(defun s (x) (list (sqrt x) (sin x) (cos x)))", "(s 0)", "(0.0 0.0 1.0)");
+        // an EQUAL hash table and SXHASH take two lists as the same key when EQUAL does
+        check("(defun k (a b) (let ((h (make-hash-table :test 'equal))) (progn (setf (gethash a h) 1) " +
+                "(list (equal a b) (gethash b h) (= (sxhash a) (sxhash b))))))", "(k (list 1 'x) (list 1 'x))", "(T 1 T)");
+        // EQUAL on lists built at run time, of different lengths, and on a list against an atom
+        check("(defun g (a b) (list (equal a b) (equal b a)))", "(g (list 1 2 3) (list 1 2))", "(NIL NIL)");
+        check("(defun g (a b) (list (equal a b) (equal b a)))", "(g (list 1 2) 5)", "(NIL NIL)");
+        check("(defun g (a b) (list (equal a b) (equal b a)))", "(g (list 1 (list 2)) (list 1 (list 2)))", "(T T)");
+        // optional parameters left out are nil
+        check("(defun opt (a &optional b) (list a b))", "(opt 1)", "(1 NIL)");
+        check("(defun opt (a &optional b) (list a b)) (defun k () (list (opt 1) (opt 1 2)))", "(k)",
+                "((1 NIL) (1 2))");
+        check("(defun opt (&optional x y) (if x (+ x (if y y 0)) 'none)) (defun k () (list (opt) (opt 1) (opt 1 2)))",
+                "(k)", "(NONE 1 3)");
+
+        System.out.printf("%d cases passed%n", cases);
+    }
+
+    private static void check(String definitions, String form, String expected) {
+        String interpreted = run(definitions, form, false);
+        String compiled = run(definitions, form, true);
+        if (!interpreted.equals(expected))
+            throw new IllegalStateException(form + " gave " + interpreted + " interpreted, expected " + expected);
+        if (!compiled.equals(expected))
+            throw new IllegalStateException(form + " gave " + compiled + " compiled, expected " + expected);
+        cases++;
+    }
+
+    private static String run(String definitions, String form, boolean compile) {
+        JispInterp interp = new JispInterp();
+        JispParser parser = new JispParser();
+        for (Object x : (ArrayList) parser.interpret(definitions)) {
+            interp.eval(x);
+            if (compile && (x instanceof JispCons) && (((JispCons) x).car() == JispSymbol.intern("DEFUN"))) {
+                JispSymbol name = (JispSymbol) ((JispCons) x).nth(1);
+                Object done = new JispCompiler().compile(name.getName(), (JispFunction) interp.getFunction(name),
+                        EnumSet.noneOf(JispCompiler.CompileFlags.class));
+                if (done == null)
+                    throw new IllegalStateException(name + " did not compile");
+            }
+        }
+        long calls = interp.getCallCount();
+        Object result = interp.eval(((ArrayList) parser.interpret(form)).get(0));
+        if (compile && (interp.getCallCount() != calls))
+            throw new IllegalStateException(form + " called interpreted code");
+        return JispCons.print(result);
+    }
+}
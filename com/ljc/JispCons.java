@@ -0,0 +1,175 @@
+package com.ljc;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public final class JispCons implements Iterable<Object> {
+
+    /* A cons cell, the one list type of the interpreter: the reader builds programs out of
+       them, and CONS, LIST and friends build data out of them. A list is a chain of cells
+       linked through their cdr and ended by nil (null), so CONS, CAR and CDR take constant
+       time and a list can share its tail with others. Cells are never modified once made,
+       which is what makes sharing safe; anything that wants a list with a different element
+       builds new cells up to that element.
+       Walking a list only ever follows cdrs in a loop, never recursion, so a list may be as
+       long as memory allows. Some methods are public for compiled code, see JispCompiler. */
+
+    private final Object car;
+    private final Object cdr;
+
+    public JispCons(Object car, Object cdr) {
+        this.car = car;
+        this.cdr = cdr;
+    }
+
+    public Object car() {
+        return car;
+    }
+
+    public Object cdr() {
+        return cdr;
+    }
+
+    // the cdr if it is a cons, null at the end of the list or of a dotted list
+    JispCons rest() {
+        return (cdr instanceof JispCons) ? (JispCons) cdr : null;
+    }
+
+    public static JispCons list(Object... items) {
+        JispCons list = null;
+        for (int i = items.length - 1; i >= 0; i--)
+            list = new JispCons(items[i], list);
+        return list;
+    }
+
+    // a form that evaluates to value: value itself, unless it is a symbol or a list, which are quoted
+    public static Object quote(Object value) {
+        return ((value instanceof JispSymbol) || (value instanceof JispCons)) ?
+                list(JispSymbol.QUOTE, value) :
+                value;
+    }
+
+    // a list of the same elements, nil for an empty one
+    public static JispCons fromList(List items) {
+        JispCons list = null;
+        for (int i = items.size() - 1; i >= 0; i--)
+            list = new JispCons(items.get(i), list);
+        return list;
+    }
+
+    // the same elements ending in tail rather than nil, which is tail itself for no elements
+    public static Object fromList(List items, Object tail) {
+        Object list = tail;
+        for (int i = items.size() - 1; i >= 0; i--)
+            list = new JispCons(items.get(i), list);
+        return list;
+    }
+
+    // the elements of list, which may be nil; the end of a dotted list is left out
+    public static Iterable<Object> elements(Object list) {
+        return (list instanceof JispCons) ?
+                (JispCons) list :
+                Collections.emptyList();
+    }
+
+    // number of cells in the list starting here
+    int length() {
+        int n = 1;
+        for (JispCons c = rest(); c != null; c = c.rest())
+            n++;
+        return n;
+    }
+
+    // the n'th element, nil past the end
+    public Object nth(int n) {
+        JispCons c = nthCdr(n);
+        return (c != null) ? c.car : null;
+    }
+
+    // the list from the n'th element on, null past the end
+    JispCons nthCdr(int n) {
+        JispCons c = this;
+        for (int i = 0; (i < n) && (c != null); i++)
+            c = c.rest();
+        return c;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private JispCons next = JispCons.this;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Object next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Object item = next.car;
+                next = next.rest();
+                return item;
+            }
+        };
+    }
+
+    // how the printer shows any value: lists in parentheses, arrays as #(...) and nil as NIL
+    static String print(Object x) {
+        if (x == null)
+            return "NIL";
+        return JispArrays.isArray(x) ?
+                JispArrays.print(x) :
+                x.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("(");
+        JispCons c = this;
+        while (true) {
+            out.append(print(c.car));
+            if (c.cdr instanceof JispCons) {
+                out.append(' ');
+                c = (JispCons) c.cdr;
+            } else {
+                if (c.cdr != null)
+                    out.append(" . ").append(print(c.cdr));
+                return out.append(')').toString();
+            }
+        }
+    }
+
+    // EQUAL on lists: the same elements in the same order
+    @Override
+    public boolean equals(Object o) {
+        Object a = this;
+        Object b = o;
+        while ((a instanceof JispCons) && (b instanceof JispCons)) {
+            JispCons x = (JispCons) a;
+            JispCons y = (JispCons) b;
+            if ((x.car == null) ? (y.car != null) : !x.car.equals(y.car))
+                return false;
+            a = x.cdr;
+            b = y.cdr;
+        }
+        // a list against a shorter list or an atom; an atom's own equals never takes a cons
+        if ((a == b) || (a == null) || (a instanceof JispCons))
+            return a == b;
+        return a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        Object c = this;
+        for (; c instanceof JispCons; c = ((JispCons) c).cdr) {
+            Object item = ((JispCons) c).car;
+            hash = 31 * hash + ((item == null) ? 0 : item.hashCode());
+        }
+        return 31 * hash + ((c == null) ? 0 : c.hashCode());
+    }
+}
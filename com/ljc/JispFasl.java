@@ -0,0 +1,294 @@
+package com.ljc;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+class JispFasl {
+
+    /* FASL files, written by COMPILE-FILE and read by LOAD: the top-level forms of a source
+       file already parsed, plus the class files for the functions it compiles, so loading
+       one neither parses nor generates bytecode.
+       A FASL starts with MAGIC and then holds one record after another:
+         FORM      a form, which LOAD evaluates like one read from source
+         COMPILED  a function name, a class name and the class file, made from a
+                   top-level (compile name) form; LOAD installs the class as the compiled
+                   code of the function, which the forms before it have just defined
+         END
+       Forms are written as a tag and a body. Symbols are interned in a table as the file is
+       written: the first use of one writes its name and gives it the next index, and later
+       uses write just the index. Counts, lengths and fixnums are variable-length integers,
+       7 bits a byte, fixnums zigzag encoded so small negative ones are short too.
+       Lists are written as their length, elements and tail, so writing and reading them
+       takes a loop rather than recursion down the cdrs. */
+
+    static final byte[] MAGIC = {'J', 'F', 'A', 'S', 'L', 2}; // the last byte is the version
+
+    private static final int END = 0;
+    private static final int FORM = 1;
+    private static final int COMPILED = 2;
+
+    private static final int NIL = 0;
+    private static final int FIXNUM = 1;
+    private static final int BIGNUM = 2;
+    private static final int RATIO = 3;
+    private static final int FLOAT = 4;
+    private static final int STRING = 5;
+    private static final int NEW_SYMBOL = 6;
+    private static final int SYMBOL = 7;
+    private static final int LIST = 8;
+
+    private static final JispSymbol DEFUN = JispSymbol.intern("DEFUN");
+    private static final JispSymbol COMPILE = JispSymbol.intern("COMPILE");
+
+    private JispFasl() {
+    }
+
+    // whether the file starts like a FASL
+    static boolean isFasl(FileChannel channel) throws IOException {
+        java.nio.ByteBuffer start = java.nio.ByteBuffer.allocate(MAGIC.length);
+        long position = channel.position();
+        while (start.hasRemaining() && (channel.read(start) > 0))
+            ;
+        channel.position(position);
+        return java.util.Arrays.equals(start.array(), MAGIC) && !start.hasRemaining();
+    }
+
+    /* writes the FASL for source to target. Functions are compiled where the source compiles
+       them, from the DEFUN before; a compile that fails or that has options stays a form, to
+       be compiled or reported when the FASL is loaded */
+    static void compileFile(Path source, Path target) throws IOException {
+        JispInterp definitions = new JispInterp(); // only ever runs the DEFUNs, to compile them
+        try (Reader in = JispInterp.sourceReader(FileChannel.open(source));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(FileChannel.open(target, StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)), 1 << 16))) {
+            FormWriter writer = new FormWriter(out);
+            out.write(MAGIC);
+            JispParser parser = new JispParser(in);
+            for (Object form = parser.read(); form != JispParser.EOF; form = parser.read()) {
+                if (isDefun(form))
+                    definitions.eval(form);
+                if (!(isCompile(form) && writer.compiled(definitions, (JispSymbol) ((JispCons) form).nth(1)))) {
+                    out.write(FORM);
+                    writer.write(form);
+                }
+            }
+            out.write(END);
+        }
+    }
+
+    private static boolean isDefun(Object form) {
+        return (form instanceof JispCons) && (((JispCons) form).car() == DEFUN);
+    }
+
+    // (compile name) with no options
+    private static boolean isCompile(Object form) {
+        return (form instanceof JispCons) && (((JispCons) form).car() == COMPILE) &&
+                (((JispCons) form).length() == 2) && (((JispCons) form).nth(1) instanceof JispSymbol);
+    }
+
+    // evaluates the records of a FASL in order, giving the value of the last form
+    static Object load(FileChannel channel, JispInterp context) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        FormReader reader = new FormReader(in);
+        Object result = null;
+        while (true) {
+            int record = in.read();
+            switch (record) {
+                case FORM:
+                    result = context.eval(reader.read());
+                    break;
+                case COMPILED:
+                    result = reader.install(context);
+                    break;
+                case END:
+                    return result;
+                default:
+                    throw new IOException("bad FASL record " + record);
+            }
+        }
+    }
+
+    private static final class FormWriter {
+        private final DataOutputStream out;
+        private final HashMap<JispSymbol, Integer> symbols = new HashMap<>();
+
+        FormWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        // writes the COMPILED record for name, false if it cannot be compiled now
+        boolean compiled(JispInterp definitions, JispSymbol name) throws IOException {
+            Object func = definitions.getFunction(name);
+            if (!(func instanceof JispFunction))
+                return false;
+            String className = JispCompiler.newClassName();
+            byte[] classdata = new JispCompiler().generate(className, (JispFunction) func);
+            if (classdata == null)
+                return false;
+            out.write(COMPILED);
+            write(name);
+            writeString(className);
+            writeCount(classdata.length);
+            out.write(classdata);
+            return true;
+        }
+
+        void write(Object x) throws IOException {
+            if (x == null) {
+                out.write(NIL);
+            } else if (x instanceof Long) {
+                out.write(FIXNUM);
+                long n = (Long) x;
+                writeVarLong((n << 1) ^ (n >> 63));
+            } else if (x instanceof BigInteger) {
+                out.write(BIGNUM);
+                writeBytes(((BigInteger) x).toByteArray());
+            } else if (x instanceof JispRatio) {
+                out.write(RATIO);
+                writeBytes(((JispRatio) x).getNumerator().toByteArray());
+                writeBytes(((JispRatio) x).getDenominator().toByteArray());
+            } else if (x instanceof Double) {
+                out.write(FLOAT);
+                out.writeDouble((Double) x);
+            } else if (x instanceof String) {
+                out.write(STRING);
+                writeString((String) x);
+            } else if (x instanceof JispSymbol) {
+                Integer index = symbols.get(x);
+                if (index == null) {
+                    symbols.put((JispSymbol) x, symbols.size());
+                    out.write(NEW_SYMBOL);
+                    writeString(((JispSymbol) x).getName());
+                } else {
+                    out.write(SYMBOL);
+                    writeCount(index);
+                }
+            } else if (x instanceof JispCons) {
+                out.write(LIST);
+                int length = 0;
+                Object tail = x;
+                for (; tail instanceof JispCons; tail = ((JispCons) tail).cdr())
+                    length++;
+                writeCount(length);
+                for (tail = x; tail instanceof JispCons; tail = ((JispCons) tail).cdr())
+                    write(((JispCons) tail).car());
+                write(tail);
+            } else {
+                throw new IOException("cannot write " + JispCons.print(x) + " to a FASL");
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeCount(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeCount(int n) throws IOException {
+            writeVarLong(n);
+        }
+
+        private void writeVarLong(long n) throws IOException {
+            while ((n & ~0x7FL) != 0) {
+                out.write((int) ((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            out.write((int) n);
+        }
+    }
+
+    private static final class FormReader {
+        private final DataInputStream in;
+        private final ArrayList<JispSymbol> symbols = new ArrayList<>();
+
+        FormReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        // the rest of a COMPILED record, installing the class on the function it names
+        Object install(JispInterp context) throws IOException {
+            JispSymbol name = (JispSymbol) read();
+            String className = readString();
+            byte[] classdata = readBytes();
+            Object func = context.getFunction(name);
+            if (!(func instanceof JispFunction)) {
+                System.err.println("ERROR: " + name + " not an interpreted function");
+                return null;
+            }
+            return new JispCompiler().install(name.getName(), (JispFunction) func, className, classdata);
+        }
+
+        Object read() throws IOException {
+            int tag = in.read();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case FIXNUM:
+                    long n = readVarLong();
+                    return JispNumbers.box((n >>> 1) ^ -(n & 1));
+                case BIGNUM:
+                    return JispNumbers.normalise(new BigInteger(readBytes()));
+                case RATIO:
+                    return JispNumbers.ratio(new BigInteger(readBytes()), new BigInteger(readBytes()));
+                case FLOAT:
+                    return in.readDouble();
+                case STRING:
+                    return readString();
+                case NEW_SYMBOL:
+                    JispSymbol symbol = JispSymbol.intern(readString());
+                    symbols.add(symbol);
+                    return symbol;
+                case SYMBOL:
+                    return symbols.get(readCount());
+                case LIST:
+                    int length = readCount();
+                    ArrayList items = new ArrayList(length);
+                    for (int i = 0; i < length; i++)
+                        items.add(read());
+                    Object list = read(); // the tail
+                    for (int i = length - 1; i >= 0; i--)
+                        list = new JispCons(items.get(i), list);
+                    return list;
+                default:
+                    throw new IOException("bad FASL tag " + tag);
+            }
+        }
+
+        private String readString() throws IOException {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readCount()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private int readCount() throws IOException {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() throws IOException {
+            long n = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                n |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return n;
+            }
+        }
+    }
+}
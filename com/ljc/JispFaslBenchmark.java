@@ -0,0 +1,66 @@
+package com.ljc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class JispFaslBenchmark {
+
+    /* Startup time from source and from a FASL: a generated program of N functions, each
+       defined and then compiled, is loaded into a fresh interpreter from its source, which
+       parses every form and generates every class, and from the FASL COMPILE-FILE wrote for
+       it, which does neither. Several rounds so the JIT has settled; the best round of each
+       is reported, and the first, which is closer to what a cold start sees.
+       usage: JispFaslBenchmark [functions [rounds]] */
+
+    public static void main(String... args) throws IOException {
+        int n = (args.length > 0) ?
+                Integer.parseInt(args[0]) :
+                500;
+        int rounds = (args.length > 1) ?
+                Integer.parseInt(args[1]) :
+                5;
+
+        Path source = Files.createTempFile("jisp", ".lisp");
+        Path fasl = Files.createTempFile("jisp", ".fasl");
+        try {
+            Files.write(source, program(n).getBytes());
+            long start = System.nanoTime();
+            JispFasl.compileFile(source, fasl);
+            System.out.printf("%,d functions: source %,d bytes, FASL %,d bytes, compile-file %d ms%n",
+                    n, Files.size(source), Files.size(fasl), (System.nanoTime() - start) / 1_000_000);
+
+            long[] fromSource = {Long.MAX_VALUE, 0};
+            long[] fromFasl = {Long.MAX_VALUE, 0};
+            for (int r = 0; r < rounds; r++) {
+                time(fromSource, source, r);
+                time(fromFasl, fasl, r);
+            }
+            System.out.printf("  source: first %5d ms, best %5d ms%n", fromSource[1], fromSource[0]);
+            System.out.printf("  FASL:   first %5d ms, best %5d ms%n", fromFasl[1], fromFasl[0]);
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(fasl);
+        }
+    }
+
+    private static void time(long[] times, Path file, int round) throws IOException {
+        long start = System.nanoTime();
+        new JispInterp().load(file);
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        times[0] = Math.min(times[0], ms);
+        if (round == 0)
+            times[1] = ms;
+    }
+
+    private static String program(int n) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            out.append("(defun f").append(i).append(" (n acc)\n");
+            out.append("  (if (< n ").append(i % 7 + 1).append(") acc\n");
+            out.append("      (f").append(i).append(" (- n 1) (+ acc (* n ").append(i).append(")))))\n");
+            out.append("(compile f").append(i).append(")\n");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.ljc;
+
+import java.util.Arrays;
+
+class JispFrame {
+
+    /* A frame holds the bindings made by one function call or binding form.
+       names[i] is bound to values[i]. A function call's names array is the slot
+       layout computed once by its JispFunction, so entering a call only allocates
+       the values array. parent is the enclosing lexical frame, or null at top level. */
+
+    private static final JispSymbol[] NONE = new JispSymbol[0];
+
+    final JispFrame parent;
+    private JispSymbol[] names;
+    private Object[] values;
+
+    JispFrame(JispFrame parent, JispSymbol[] names) {
+        this(parent, names, new Object[names.length]);
+    }
+
+    JispFrame(JispFrame parent, JispSymbol[] names, Object[] values) {
+        this.parent = parent;
+        this.names = names;
+        this.values = values;
+    }
+
+    JispFrame(JispFrame parent) {
+        this(parent, NONE);
+    }
+
+    int indexOf(JispSymbol name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == name)
+                return i;
+        }
+        return -1;
+    }
+
+    Object get(int slot) {
+        return values[slot];
+    }
+
+    void set(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    void define(JispSymbol name, Object value) {
+        int slot = indexOf(name);
+        if (slot < 0) {
+            // names may be a function's shared slot layout, so never grow it in place
+            slot = names.length;
+            names = Arrays.copyOf(names, slot + 1);
+            values = Arrays.copyOf(values, slot + 1);
+            names[slot] = name;
+        }
+        values[slot] = value;
+    }
+}
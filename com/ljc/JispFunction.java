@@ -1,34 +1,52 @@
 package com.ljc;
 
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 
 class JispFunction {
 
-    private ArrayList<String> parm;
-    private ArrayList<String> opt;
+    private ArrayList<JispSymbol> parm;
+    private ArrayList<JispSymbol> opt;
     private Object func;
+    private JispSymbol[] slots; // frame layout: required then optional parameters
+    private JispFrame closure; // frame the function was defined in, null for DEFUN
+    private JispNode node; // analysed body, built on the first call
+    private JispSymbol name; // set by DEFUN, null for a lambda
 
-    JispFunction(ArrayList<String> parameters, ArrayList<String> optionalParameters, Object function) {
+    // tiered execution, see JispTier. Only the counters' own interpreter touches them
+    private int invocations;
+    private int backEdges;
+    private boolean tierRequested;
+    private volatile MethodHandle compiled;
+    private volatile boolean redefined; // a later DEFUN replaced this function
+
+    JispFunction(ArrayList<JispSymbol> parameters, ArrayList<JispSymbol> optionalParameters, Object function,
+                 JispFrame environment) {
         parm = parameters;
         opt = optionalParameters;
         func = function;
+        closure = environment;
+        slots = getAllParameters().toArray(new JispSymbol[0]);
     }
 
-    JispFunction(ArrayList<String> parameters, Object function) {
-        parm = parameters;
-        func = function;
+    JispFunction(ArrayList<JispSymbol> parameters, ArrayList<JispSymbol> optionalParameters, Object function) {
+        this(parameters, optionalParameters, function, null);
+    }
+
+    JispFunction(ArrayList<JispSymbol> parameters, Object function) {
+        this(parameters, new ArrayList<>(), function);
     }
 
-    ArrayList<String> getParameters() {
+    ArrayList<JispSymbol> getParameters() {
         return parm;
     }
 
-    ArrayList<String> getOptionalParameters() {
+    ArrayList<JispSymbol> getOptionalParameters() {
         return opt;
     }
 
-    ArrayList<String> getAllParameters() {
-        ArrayList<String> combined = new ArrayList<>();
+    ArrayList<JispSymbol> getAllParameters() {
+        ArrayList<JispSymbol> combined = new ArrayList<>();
         combined.addAll(parm);
         combined.addAll(opt);
         return combined;
@@ -37,4 +55,65 @@ class JispFunction {
     Object getFunction() {
         return func;
     }
+
+    JispSymbol[] getSlots() {
+        return slots;
+    }
+
+    JispFrame getClosure() {
+        return closure;
+    }
+
+    // between the number of required parameters and the number of all parameters
+    boolean acceptsArguments(int argc) {
+        return (parm.size() <= argc) && (argc <= slots.length);
+    }
+
+    JispSymbol getName() {
+        return name;
+    }
+
+    void setName(JispSymbol name) {
+        this.name = name;
+    }
+
+    void countInvocation() {
+        if (++invocations == JispTier.invocationThreshold)
+            JispTier.request(this);
+    }
+
+    void countBackEdge() {
+        if (++backEdges == JispTier.backEdgeThreshold)
+            JispTier.request(this);
+    }
+
+    // true the first time only
+    boolean markTierRequested() {
+        if (tierRequested)
+            return false;
+        tierRequested = true;
+        return true;
+    }
+
+    MethodHandle getCompiled() {
+        return compiled;
+    }
+
+    void setCompiled(MethodHandle target) {
+        compiled = target;
+    }
+
+    boolean isRedefined() {
+        return redefined;
+    }
+
+    void setRedefined() {
+        redefined = true;
+    }
+
+    JispNode getNode() {
+        if (node == null)
+            node = JispAnalyser.analyse(this);
+        return node;
+    }
 }
\ No newline at end of file
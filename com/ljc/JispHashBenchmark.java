@@ -0,0 +1,87 @@
+package com.ljc;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class JispHashBenchmark {
+
+    /* Compares the open-addressing JispHashTable behind MAKE-HASH-TABLE with
+       java.util.HashMap: N fixnum keys are inserted and then looked up again, several
+       rounds so the JIT has settled, and the best round of each is reported. This is done
+       for evenly spaced keys and for random ones. Keys are boxed up front, as they would
+       be in Jisp, so only the tables are timed.
+       usage: JispHashBenchmark [keys [rounds]] */
+
+    public static void main(String... args) {
+        int n = (args.length > 0) ?
+                Integer.parseInt(args[0]) :
+                10_000_000;
+        int rounds = (args.length > 1) ?
+                Integer.parseInt(args[1]) :
+                5;
+
+        Object[] keys = new Object[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = JispNumbers.box(i * 7L); // spread out a little, like real keys
+        run("sequential", keys, rounds);
+
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++)
+            keys[i] = JispNumbers.box(random.nextLong());
+        run("random", keys, rounds);
+    }
+
+    private static void run(String kind, Object[] keys, int rounds) {
+        long[] jisp = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] java = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int r = 0; r < rounds; r++) {
+            best(jisp, jispTable(keys));
+            best(java, hashMap(keys));
+        }
+        System.out.printf("%,d %s fixnum keys, best of %d rounds%n", keys.length, kind, rounds);
+        System.out.printf("  JispHashTable: insert %6d ms, lookup %6d ms%n", jisp[0], jisp[1]);
+        System.out.printf("  HashMap:       insert %6d ms, lookup %6d ms%n", java[0], java[1]);
+    }
+
+    private static void best(long[] best, long[] times) {
+        best[0] = Math.min(best[0], times[0]);
+        best[1] = Math.min(best[1], times[1]);
+    }
+
+    private static long[] jispTable(Object[] keys) {
+        JispHashTable table = new JispHashTable(JispHashTable.Test.EQL, 0);
+        long start = System.nanoTime();
+        for (Object key : keys)
+            table.put(key, key);
+        long inserted = System.nanoTime();
+        long found = 0;
+        for (Object key : keys) {
+            if (table.get(key, null) != null)
+                found++;
+        }
+        long looked = System.nanoTime();
+        check(found, keys.length);
+        return new long[]{(inserted - start) / 1_000_000, (looked - inserted) / 1_000_000};
+    }
+
+    private static long[] hashMap(Object[] keys) {
+        HashMap<Object, Object> table = new HashMap<>();
+        long start = System.nanoTime();
+        for (Object key : keys)
+            table.put(key, key);
+        long inserted = System.nanoTime();
+        long found = 0;
+        for (Object key : keys) {
+            if (table.get(key) != null)
+                found++;
+        }
+        long looked = System.nanoTime();
+        check(found, keys.length);
+        return new long[]{(inserted - start) / 1_000_000, (looked - inserted) / 1_000_000};
+    }
+
+    private static void check(long found, int expected) {
+        if (found != expected)
+            throw new IllegalStateException("found " + found + " of " + expected + " keys");
+    }
+}
@@ -0,0 +1,200 @@
+package com.ljc;
+
+import java.util.function.BiConsumer;
+
+public final class JispHashTable {
+
+    /* The hash table behind MAKE-HASH-TABLE, with open addressing: keys and values sit side
+       by side in one array, key at 2i and value at 2i + 1, so an entry is two slots and no
+       node object. A key is placed at the slot its hash picks and, when that is taken, the
+       next free one after it (linear probing); removing a key moves later entries of the
+       same run back, so there are no tombstones and a lookup stops at the first empty slot.
+       The capacity is a power of two kept at least half again the count.
+       The test decides which keys are the same: EQ is identity, except that numbers are
+       compared by value as fixnums would be in a real Lisp; EQL is like the EQL builtin,
+       so strings compare by contents too but lists by identity; EQUAL is like the EQUAL
+       builtin and compares lists element by element. SXHASH goes with EQUAL.
+       Public for compiled code, see JispCompiler. */
+
+    enum Test {EQ, EQL, EQUAL}
+
+    // marks the key nil, as null marks an empty slot
+    private static final Object NIL_KEY = new Object();
+    private static final int MIN_CAPACITY = 8;
+
+    private final Test test;
+    private Object[] table;
+    private int count;
+
+    JispHashTable(Test test, int size) {
+        this.test = test;
+        int capacity = MIN_CAPACITY;
+        while ((capacity < size + (size >> 1)) && (capacity < (1 << 29)))
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        table = new Object[2 * capacity];
+    }
+
+    int count() {
+        return count;
+    }
+
+    // the value of key, or missing when there is none
+    Object get(Object key, Object missing) {
+        int i = find(mask(key));
+        return (i >= 0) ?
+                table[i + 1] :
+                missing;
+    }
+
+    void put(Object key, Object value) {
+        key = mask(key);
+        int i = find(key);
+        if (i >= 0) {
+            table[i + 1] = value;
+            return;
+        }
+        if ((count + 1) * 3 > capacity() * 2) {
+            resize(capacity() * 2);
+            i = find(key);
+        }
+        i = -i - 1;
+        table[i] = key;
+        table[i + 1] = value;
+        count++;
+    }
+
+    // (setf (gethash key table) value), giving value
+    public static Object puthash(Object key, Object table, Object value) {
+        if (!(table instanceof JispHashTable)) {
+            System.err.println("ERROR: gethash requires a hash table");
+            return null;
+        }
+        ((JispHashTable) table).put(key, value);
+        return value;
+    }
+
+    boolean remove(Object key) {
+        int i = find(mask(key));
+        if (i < 0)
+            return false;
+        table[i] = null;
+        table[i + 1] = null;
+        count--;
+
+        // move back any later entry of the run that can no longer be found past the gap
+        int gap = i;
+        int last = table.length - 2;
+        for (int j = (i + 2) & last; table[j] != null; j = (j + 2) & last) {
+            int home = slot(table[j]);
+            // the entry stays unless the gap lies cyclically between its home and where it is
+            if (((j - home) & last) >= ((j - gap) & last)) {
+                table[gap] = table[j];
+                table[gap + 1] = table[j + 1];
+                table[j] = null;
+                table[j + 1] = null;
+                gap = j;
+            }
+        }
+        return true;
+    }
+
+    /* calls action on every entry, which may change the table meanwhile: the entries are
+       copied first, so each one present at the start is seen once */
+    void forEach(BiConsumer<Object, Object> action) {
+        Object[] entries = table.clone();
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] != null)
+                action.accept(unmask(entries[i]), entries[i + 1]);
+        }
+    }
+
+    private int capacity() {
+        return table.length >> 1;
+    }
+
+    private void resize(int capacity) {
+        Object[] old = table;
+        allocate(capacity);
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != null) {
+                int j = slot(old[i]);
+                while (table[j] != null)
+                    j = (j + 2) & (table.length - 2);
+                table[j] = old[i];
+                table[j + 1] = old[i + 1];
+            }
+        }
+    }
+
+    // index of key in table, or -(index of the free slot where it would go) - 1
+    private int find(Object key) {
+        int last = table.length - 2;
+        for (int i = slot(key); ; i = (i + 2) & last) {
+            Object k = table[i];
+            if (k == null)
+                return -i - 1;
+            if (same(k, key))
+                return i;
+        }
+    }
+
+    /* the home slot of a key: the low bits of its hash, with the high bits folded in as
+       HashMap does. Nearby fixnums land in nearby slots, which keeps a run of keys in cache */
+    private int slot(Object key) {
+        int h = hash(key);
+        return ((h ^ (h >>> 16)) & (capacity() - 1)) << 1;
+    }
+
+    private static Object mask(Object key) {
+        return (key == null) ? NIL_KEY : key;
+    }
+
+    private static Object unmask(Object key) {
+        return (key == NIL_KEY) ? null : key;
+    }
+
+    private int hash(Object key) {
+        if (key == NIL_KEY)
+            return 0;
+        switch (test) {
+            case EQUAL:
+                return sxhash(key);
+            case EQL:
+                return (key instanceof JispCons) ? System.identityHashCode(key) : key.hashCode();
+            default:
+                return (key instanceof Number) ? key.hashCode() : System.identityHashCode(key);
+        }
+    }
+
+    private boolean same(Object a, Object b) {
+        if (a == b)
+            return true;
+        switch (test) {
+            case EQUAL:
+                return a.equals(b);
+            case EQL:
+                return !(a instanceof JispCons) && a.equals(b);
+            default:
+                return (a instanceof Number) && a.equals(b);
+        }
+    }
+
+    /* a hash consistent with EQUAL: equal objects hash alike. Lists hash by their elements,
+       walked in a loop, and the result is never negative */
+    static int sxhash(Object x) {
+        int hash = 1;
+        for (; x instanceof JispCons; x = ((JispCons) x).cdr())
+            hash = 31 * hash + sxhash(((JispCons) x).car());
+        hash = 31 * hash + ((x == null) ? 0 : x.hashCode());
+        return hash & Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "#<HASH-TABLE :TEST " + test + " :COUNT " + count + ">";
+    }
+}
@@ -1,39 +1,65 @@
 package com.ljc;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.invoke.*;
 import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Stack;
+import java.util.List;
+import java.util.stream.Collectors;
 
-import static java.util.stream.Collectors.toCollection;
 
 public class JispInterp {
 
-    /* symbols contains functions with names. If the symbol is compiled, the call site
-       associated with that function will be found here instead. */
-    private static HashMap<String, Object> symbols;
+    /* Every interpreter has its own global variables and functions, so several can run on
+       different threads at once. values[id] and functions[id] are the cells of the symbol
+       with that id; the arrays grow as symbols are interned. A function cell holds a
+       JispFunction, which carries its compiled code once it has been compiled.
+       Builtins, symbols and compiled classes are shared by all interpreters. */
+    private Object[] values;
+    private Object[] functions;
 
-    /* locals are current local values.
-       saved_locals is a stack of caller's local values, saved when a function is called. */
-    private static Stack<HashMap> saved_locals;
-    private static HashMap<String, Object> locals;
+    /* frame is the innermost lexical environment; it is null at top level.
+       A function call or binding form pushes one frame and pops it on return. */
+    private JispFrame frame;
 
-    // global variables
-    private static HashMap<String, Object> globals;
+    private long calls;
+
+    /* A call in tail position does not invoke its function, it leaves the function and
+       its arguments here and returns TAIL_CALL. That unwinds to the invoke loop of the
+       enclosing call, which then runs the pending call in its place, so a chain of tail
+       calls runs in constant Java stack. */
+    static final Object TAIL_CALL = new Object();
+    private JispFunction tailFunction;
+    private Object[] tailValues;
+
+    /* when set, interpreted functions run the node tree JispAnalyser builds from their body
+       instead of evaluating the body forms directly */
+    static boolean analyse = true;
 
     /* names maps functions with names that we cannot use as Java method names */
     private static HashMap<String, String> names;
 
-    static {
-        symbols = new HashMap<>();
-        globals = new HashMap<>();
-        locals = new HashMap<>();
-        globals.put("nil", null);
-        saved_locals = new Stack<>();
+    /* builtins maps the Java name of every builtin to a function object, resolved once at startup
+       so that calling a builtin is a single map lookup rather than a reflective search. */
+    private static HashMap<String, JispCompiledFunction> builtins;
 
+    static {
         /* names list is for looking up symbol-based internals,
         since we can't easily have java functions with these names. */
 
@@ -50,193 +76,522 @@ public class JispInterp {
         names.put(">", "jisp_morethan");
         names.put("<=", "jisp_lessthanorequal");
         names.put(">=", "jisp_morethanorequal");
+
+        builtins = loadBuiltins();
+    }
+
+    private static HashMap<String, JispCompiledFunction> loadBuiltins() {
+        HashMap<String, JispCompiledFunction> table = new HashMap<>();
+        Lookup lookup = MethodHandles.lookup();
+        MethodType type = MethodType.methodType(Object.class, JispCons.class, JispInterp.class);
+        Class[] parameters = type.parameterArray();
+
+        for (Method m : JispBuiltinFunction.class.getDeclaredMethods()) {
+            if (!Modifier.isStatic(m.getModifiers()) || (m.getReturnType() != Object.class) ||
+                    !Arrays.equals(m.getParameterTypes(), parameters))
+                continue; // helper, not a builtin
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "evaluate",
+                        MethodType.methodType(JispCompiledFunction.class), type, lookup.unreflect(m), type);
+                table.put(m.getName(), (JispCompiledFunction) site.getTarget().invokeExact());
+            } catch (Throwable ex) {
+                System.err.println("ERROR: could not link builtin " + m.getName() + ": " + ex.getMessage());
+            }
+        }
+        return table;
+    }
+
+    static JispCompiledFunction getBuiltin(String name) {
+        return builtins.get(name);
+    }
+
+    static boolean isBuiltin(String name) {
+        return builtins.containsKey(name);
     }
 
+    /* The Java name of a symbol, the name of its builtin and of compiled calls to it: - becomes
+       _, as in the builtins' names, and anything but an upper case letter or digit becomes $
+       and four hex digits, so no two symbols share a Java name. The names of the builtins
+       above are lower case and so are never given to another symbol either. */
     public static String getName(String name) {
-        return names.containsKey(name) ?
-                names.get(name) :
-                name.toUpperCase().replace('-', '_');
+        if (names.containsKey(name))
+            return names.get(name);
+        StringBuilder java = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch == '-')
+                java.append('_');
+            else if (((ch >= 'A') && (ch <= 'Z')) || ((ch >= '0') && (ch <= '9')))
+                java.append(ch);
+            else
+                java.append(String.format("$%04X", (int) ch));
+        }
+        return java.toString();
+    }
+
+    public JispInterp() {
+        values = new Object[0];
+        functions = new Object[0];
+        setGlobal(JispSymbol.T, JispSymbol.T);
+        setGlobal(JispSymbol.NIL, null);
     }
 
+    /* Compiled code calls every function through invokedynamic. Builtins cannot be redefined,
+       so they link straight to the builtin, which takes the call as a list. Any other name is
+       called with its argument values, typed as callType(argc), and links to the
+       MutableCallSite shared by all compiled callers of that name with that many arguments:
+       it points at the interpreter (callInterpreted) until a definition taking that many is
+       compiled, and from then on at that code's call method, behind a guard that the calling
+       interpreter's function cell still holds the JispFunction compiled. Every interpreter
+       in the JVM shares the site, so a caller whose interpreter has another definition of
+       the name, or has redefined it since, fails the guard and goes to the interpreter, which
+       finds its own; no caller is left with a stale target and none needs relinking. */
     public static CallSite bootstrapCompiledCall(Lookup caller, String name, MethodType type)
             throws NoSuchMethodException, IllegalAccessException {
-        Lookup lookup = MethodHandles.lookup();
-        Object o = symbols.get(name);
-        if (o instanceof MutableCallSite) {
-            return (MutableCallSite) o;
-        }
-        try {
-            MethodHandle evaluate = lookup.findStatic(JispBuiltinFunction.class,
+        if (isBuiltin(name)) {
+            MethodHandle evaluate = MethodHandles.lookup().findStatic(JispBuiltinFunction.class,
                     name, MethodType.methodType(Object.class,
-                            new Class[]{ArrayList.class, JispInterp.class}));
-            return new ConstantCallSite(evaluate);
-        } catch (NoSuchMethodException ex) { // interpreted function
-            MethodHandle evaluate = lookup.findStatic(JispInterp.class,
-                    "evalFromCompiled", MethodType.methodType(Object.class,
-                            new Class[]{ArrayList.class, JispInterp.class}));
+                            new Class[]{JispCons.class, JispInterp.class}));
             return new ConstantCallSite(evaluate);
         }
+        int argc = type.parameterCount() - 1;
+        JispSymbol sym = JispSymbol.forJavaName(name);
+        if (sym == null) // nothing of that name yet, so look for it on every call
+            return new ConstantCallSite(MethodHandles.insertArguments(unlinked, 0, name)
+                    .asCollector(Object[].class, argc));
+        return callSite(sym, argc);
     }
 
-    public static void setCallSite(String name, MethodHandle target) {
-        Object sym = symbols.containsKey(name);
-        if ((sym == null) || !(sym instanceof MutableCallSite)) {
-            symbols.put(name, new MutableCallSite(target));
-        } else {
-            MutableCallSite ms = (MutableCallSite) symbols.get(name);
-            ms.setTarget(target);
+    static MethodType callType(int argc) {
+        return MethodType.genericMethodType(argc).insertParameterTypes(0, JispInterp.class);
+    }
+
+    private static final MethodHandle interpreted;
+    private static final MethodHandle unlinked;
+    private static final MethodHandle defines;
+
+    static {
+        try {
+            interpreted = MethodHandles.lookup().findStatic(JispInterp.class, "callInterpreted",
+                    MethodType.methodType(Object.class, JispSymbol.class, JispInterp.class, Object[].class));
+            unlinked = MethodHandles.lookup().findStatic(JispInterp.class, "callUnlinked",
+                    MethodType.methodType(Object.class, String.class, JispInterp.class, Object[].class));
+            defines = MethodHandles.lookup().findStatic(JispInterp.class, "defines",
+                    MethodType.methodType(boolean.class, JispSymbol.class, JispFunction.class, JispInterp.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static MethodHandle interpreted(JispSymbol sym, int argc) {
+        return MethodHandles.insertArguments(interpreted, 0, sym).asCollector(Object[].class, argc);
+    }
+
+    private static MutableCallSite callSite(JispSymbol sym, int argc) {
+        synchronized (sym) {
+            if (sym.compiled == null)
+                sym.compiled = new MutableCallSite[argc + 1];
+            else if (sym.compiled.length <= argc)
+                sym.compiled = Arrays.copyOf(sym.compiled, argc + 1);
+            if (sym.compiled[argc] == null)
+                sym.compiled[argc] = new MutableCallSite(interpreted(sym, argc));
+            return sym.compiled[argc];
+        }
+    }
+
+    // the guard on a linked call: whether context still has func as the function of sym
+    private static boolean defines(JispSymbol sym, JispFunction func, JispInterp context) {
+        return context.getFunction(sym) == func;
+    }
+
+    /* installs call, the compiled code for func, under name, unless func has been replaced by
+       a new DEFUN while it was being compiled: compiled callers pass it their argument values
+       one by one, and the interpreter, see invokeCompiled, the array it has them in. call
+       takes every parameter, so a call that leaves out &optional ones links to it with nil
+       passed for them */
+    static boolean setCallSite(String name, JispFunction func, MethodHandle call) {
+        JispSymbol sym = JispSymbol.intern(name.toUpperCase());
+        synchronized (sym) {
+            if (func.isRedefined())
+                return false;
+            int all = call.type().parameterCount() - 1;
+            MutableCallSite[] sites = new MutableCallSite[all - func.getParameters().size() + 1];
+            for (int i = 0; i < sites.length; i++) {
+                int argc = func.getParameters().size() + i;
+                MethodHandle target = MethodHandles.insertArguments(call, 1 + argc, new Object[all - argc]);
+                MethodHandle test = MethodHandles.dropArguments(MethodHandles.insertArguments(defines, 0, sym, func),
+                        1, target.type().parameterList().subList(1, argc + 1));
+                sites[i] = callSite(sym, argc);
+                sites[i].setTarget(MethodHandles.guardWithTest(test, target, interpreted(sym, argc)));
+            }
+            MutableCallSite.syncAll(sites);
+            func.setCompiled(call.asSpreader(Object[].class, all));
+            return true;
+        }
+    }
+
+    /* old is no longer sym's function, so its code may not be installed if it is still being
+       compiled; the call sites need nothing, their guard sends this interpreter's callers to
+       the new definition and leaves other interpreters' alone */
+    static void redefined(JispSymbol sym, Object old) {
+        synchronized (sym) {
+            if (old instanceof JispFunction)
+                ((JispFunction) old).setRedefined();
         }
     }
 
     // need this so a compiled function can call an interpreted one
-    public static Object evalFromCompiled(ArrayList val, JispInterp context) {
-        return context.eval(val);
+    public static Object callInterpreted(JispSymbol sym, JispInterp context, Object[] args) {
+        return context.funcall(sym, args);
+    }
+
+    /* a call in compiled code headed by a variable it holds in a local: the function of that
+       name if there is one, as evalInvokeSymbol looks it up, otherwise the variable's value */
+    public static Object callLocal(JispSymbol sym, Object value, JispInterp context, Object[] args) {
+        Object target = context.getFunction(sym);
+        return context.funcall((target != null) ? target : value, args);
     }
 
+    public static Object callUnlinked(String name, JispInterp context, Object[] args) {
+        JispSymbol sym = JispSymbol.forJavaName(name);
+        if (sym == null) {
+            System.err.println("ERROR: undefined function " + name);
+            return null;
+        }
+        return context.funcall(sym, args);
+    }
+
+    // opens a new, empty scope for setLocal; used by binding forms and compiled code
     public void saveLocals() {
-        HashMap saved = new HashMap(locals);
-        saved_locals.push(saved);
+        frame = new JispFrame(frame);
     }
 
     public void restoreLocals() {
-        HashMap restored = saved_locals.pop();
-        locals.clear();
-        locals.putAll(restored);
+        frame = frame.parent;
+    }
+
+    /* a compiled DEFUN runs at top level, as the interpreter would run it, rather than in the
+       scope of whatever called it; gives that scope back for leaveTopLevel. Typed Object, as
+       the frames are not public */
+    public Object enterTopLevel() {
+        JispFrame caller = frame;
+        frame = null;
+        return caller;
+    }
+
+    public void leaveTopLevel(Object caller) {
+        frame = (JispFrame) caller;
+    }
+
+    JispFrame getFrame() {
+        return frame;
+    }
+
+    void setFrame(JispFrame f) {
+        frame = f;
+    }
+
+    public boolean variableIsSet(JispSymbol variable) {
+        for (JispFrame f = frame; f != null; f = f.parent) {
+            if (f.indexOf(variable) >= 0)
+                return true;
+        }
+        return globalValue(variable) != JispSymbol.UNBOUND;
     }
 
+    public Object getVariable(JispSymbol variable) {
+        for (JispFrame f = frame; f != null; f = f.parent) {
+            int slot = f.indexOf(variable);
+            if (slot >= 0)
+                return f.get(slot);
+        }
+        Object value = globalValue(variable);
+        return (value != JispSymbol.UNBOUND) ? value : null;
+    }
+
+    // binds variable in the innermost frame, shadowing any outer binding
+    public void setLocal(JispSymbol variable, Object value) {
+        if (frame == null)
+            setGlobal(variable, value);
+        else
+            frame.define(variable, value);
+    }
+
+    public void setGlobal(JispSymbol variable, Object value) {
+        int id = variable.getId();
+        if (id >= values.length)
+            values = grow(values, JispSymbol.UNBOUND);
+        values[id] = value;
+    }
+
+    // the global value of variable, or JispSymbol.UNBOUND
+    private Object globalValue(JispSymbol variable) {
+        int id = variable.getId();
+        return (id < values.length) ? values[id] : JispSymbol.UNBOUND;
+    }
+
+    // global value of a symbol evaluated outside any frame; an unbound symbol evaluates to itself
+    Object evalGlobal(JispSymbol s) {
+        Object value = globalValue(s);
+        return (value != JispSymbol.UNBOUND) ? value : s;
+    }
+
+    // room for every symbol interned so far, new cells set to empty
+    private static Object[] grow(Object[] cells, Object empty) {
+        Object[] grown = Arrays.copyOf(cells, JispSymbol.count() + 64);
+        Arrays.fill(grown, cells.length, grown.length, empty);
+        return grown;
+    }
+
+    // String versions are for Java code using Jisp as a library
     public boolean variableIsSet(String variable) {
-        String name = variable.toUpperCase();
-        return locals.containsKey(name) || globals.containsKey(name);
+        return variableIsSet(JispSymbol.intern(variable.toUpperCase()));
     }
 
     public Object getVariable(String variable) {
-        String name = variable.toUpperCase();
-        if (locals.containsKey(name))
-            return locals.get(name);
-        return globals.getOrDefault(name, null);
+        return getVariable(JispSymbol.intern(variable.toUpperCase()));
     }
 
     public void setLocal(String variable, Object value) {
-        locals.put(variable.toUpperCase(), value);
+        setLocal(JispSymbol.intern(variable.toUpperCase()), value);
     }
 
     public void setGlobal(String variable, Object value) {
-        globals.put(variable.toUpperCase(), value);
+        setGlobal(JispSymbol.intern(variable.toUpperCase()), value);
+    }
+
+    Object getFunction(JispSymbol name) {
+        int id = name.getId();
+        return (id < functions.length) ? functions[id] : null;
     }
 
-    protected HashMap<String, Object> getSymbols() {
-        return symbols;
+    void setFunction(JispSymbol name, Object function) {
+        int id = name.getId();
+        if (id >= functions.length)
+            functions = grow(functions, null);
+        functions[id] = function;
     }
 
-    private Object copy(Object f) {
-        if (f instanceof JispArrayList) {
-            JispArrayList list = (JispArrayList) f;
-            return list.stream()
-                    .map(this::copy)
-                    .collect(toCollection(JispArrayList::new));
-        } else
-            return f;
+    List<String> getFunctionNames() {
+        return JispSymbol.all().stream()
+                .filter(s -> getFunction(s) != null)
+                .map(JispSymbol::getName)
+                .collect(Collectors.toList());
     }
 
-    private Object invokeInterpreted(JispFunction func, ArrayList list) {
-        /* list size must be inbetween number required parms and number total parms (reqs and optionals)
-           getParameters.size <= list.size <= getAllParameters.size */
-        if ((func.getAllParameters().size() < list.size()) || (func.getParameters().size() > list.size())) {
+    // number of interpreted function calls made so far, reported by TIME
+    long getCallCount() {
+        return calls;
+    }
+
+    // bytes allocated by the current thread so far, or -1 if the JVM cannot tell us
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    private Object invokeInterpreted(JispFunction func, JispCons list) {
+        /* list holds the function name followed by the argument forms. The argument count must be
+           inbetween number required parms and number total parms (reqs and optionals)
+           getParameters.size <= list.length - 1 <= getAllParameters.size */
+        int argc = list.length() - 1;
+        if (!func.acceptsArguments(argc)) {
             System.err.println("ERROR: wrong # of parameters, expected " +
                     Integer.toString(func.getParameters().size()) +
-                    " got " + Integer.toString(list.size()));
+                    " got " + Integer.toString(argc));
             return null;
         }
 
-        Object f = copy(func.getFunction());
-        HashMap<String, Object> parms = new HashMap<>();
-
-        for (String key : func.getParameters()) {
-            Object val = eval(list.remove(0));
-            parms.put(key.toUpperCase(), val);
+        // arguments are evaluated in the caller's frame; unsupplied optionals stay nil
+        Object[] values = new Object[func.getSlots().length];
+        JispCons arg = list.rest();
+        for (int slot = 0; slot < argc; slot++, arg = arg.rest()) {
+            values[slot] = eval(arg.car());
         }
+        return invoke(func, values);
+    }
 
-        int i = 0;
-        while (i < func.getOptionalParameters().size()) {
-            String key = func.getOptionalParameters().get(i);
-            Object val = null;
-            if (!list.isEmpty()) {
-                val = eval(list.remove(0));
+    /* evaluates the forms of a file in order, each one as soon as it has been read, so only
+       the form being evaluated is ever held in memory; gives the value of the last form.
+       A FASL written by COMPILE-FILE is recognised by its header and loaded as such */
+    Object load(Path file) throws IOException {
+        Object result = null;
+        FileChannel channel = FileChannel.open(file);
+        if (JispFasl.isFasl(channel)) {
+            try (channel) {
+                return JispFasl.load(channel, this);
             }
-            parms.put(key.toUpperCase(), val);
-            i++;
         }
-        saveLocals();
-        locals.putAll(parms);
-        Object result = eval(f);
-        restoreLocals();
+        try (Reader in = sourceReader(channel)) {
+            JispParser parser = new JispParser(in);
+            for (Object form = parser.read(); form != JispParser.EOF; form = parser.read())
+                result = eval(form);
+        }
         return result;
     }
 
-    private Object evalString(String s) {
-        if (variableIsSet(s))
-            return getVariable(s);
-        if (s.toUpperCase().equals("T"))
-            return "T";
-        if (s.toUpperCase().equals("NIL"))
+    /* evaluates the forms of a file in order after reading them all in parallel, see
+       JispParser.readParallel; for large files of data rather than programs, as the whole
+       file and all its forms are in memory at once */
+    Object loadParallel(Path file) throws IOException {
+        CharBuffer text = decoder().decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+        Object result = null;
+        for (Object form : JispParser.readParallel(text.array(), text.limit()))
+            result = eval(form);
+        return result;
+    }
+
+    // source text from channel, in the default charset with anything malformed replaced
+    static Reader sourceReader(FileChannel channel) {
+        return Channels.newReader(channel, decoder(), -1);
+    }
+
+    private static CharsetDecoder decoder() {
+        return Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /* calls function, a function object or the name of one, with arguments that are already
+       evaluated; for builtins that take a function, such as MAPHASH */
+    Object funcall(Object function, Object... args) {
+        if ((function instanceof JispSymbol) && (((JispSymbol) function).getBuiltin() == null)) {
+            // a user function, or failing that a variable holding one
+            Object target = getFunction((JispSymbol) function);
+            if (target == null)
+                target = getVariable((JispSymbol) function);
+            if (target != null)
+                function = target;
+        }
+        if ((function instanceof JispFunction) && ((JispFunction) function).acceptsArguments(args.length))
+            return invoke((JispFunction) function, Arrays.copyOf(args, ((JispFunction) function).getSlots().length));
+
+        // anything else is called as a form, its arguments quoted so they are not evaluated again
+        Object[] quoted = new Object[args.length];
+        for (int i = 0; i < args.length; i++)
+            quoted[i] = JispCons.quote(args[i]);
+        return evalCons(new JispCons(function, JispCons.list(quoted)));
+    }
+
+    // values holds one argument per slot of func, already evaluated and checked
+    Object invoke(JispFunction func, Object[] values) {
+        JispFrame caller = frame;
+        try {
+            while (true) {
+                MethodHandle compiled = func.getCompiled();
+                if (compiled != null)
+                    return invokeCompiled(func, compiled, values);
+                calls++;
+                func.countInvocation();
+                frame = new JispFrame(func.getClosure(), func.getSlots(), values);
+                // the body is shared by every call, nothing may modify it
+                if (!analyse)
+                    return eval(func.getFunction());
+                Object result = func.getNode().execute(this);
+                if (result != TAIL_CALL)
+                    return result;
+                func = tailFunction;
+                values = tailValues;
+                tailFunction = null;
+                tailValues = null;
+            }
+        } finally {
+            frame = caller;
+        }
+    }
+
+    // compiled code takes the context and the array of argument values, see JispTier
+    private Object invokeCompiled(JispFunction func, MethodHandle compiled, Object[] values) {
+        frame = new JispFrame(func.getClosure());
+        try {
+            return (Object) compiled.invokeExact(this, values);
+        } catch (Throwable error) {
+            System.err.println("ERROR: " + error.getMessage());
             return null;
-        return s;
+        }
+    }
+
+    /* A LAMBDA compiled by JispCompiler: code is its body compiled as a method taking the
+       captured values, then the arguments. The function made is what the builtin LAMBDA
+       would make, with the captured variables bound in its closure, and is given code
+       as its compiled form with the captured values already passed, taking the arguments
+       in an array as invokeCompiled passes them */
+    public static Object closure(JispInterp context, MethodHandle code, Object lambda, Object names,
+                                 Object[] captured) {
+        JispCons form = (JispCons) lambda;
+        ArrayList<JispSymbol> parameters = new ArrayList<>();
+        for (Object p : JispCons.elements(form.nth(1)))
+            parameters.add((JispSymbol) p);
+        JispSymbol[] slots = new JispSymbol[captured.length];
+        int i = 0;
+        for (Object name : JispCons.elements(names))
+            slots[i++] = (JispSymbol) name;
+        JispFunction f = new JispFunction(parameters, new ArrayList<>(), form.nth(2),
+                new JispFrame(context.getFrame(), slots, captured));
+        f.setCompiled(MethodHandles.insertArguments(code, 1, captured)
+                .asSpreader(Object[].class, parameters.size()));
+        return f;
+    }
+
+    // only valid as the value of a function body, see TAIL_CALL
+    Object tailCall(JispFunction func, Object[] values) {
+        tailFunction = func;
+        tailValues = values;
+        return TAIL_CALL;
     }
 
-    private Object evalInvokeSymbol(String fn, ArrayList list) {
-        Object target = symbols.get(fn);
+    Object invokeBuiltin(JispCompiledFunction builtin, JispCons list) {
+        JispFrame caller = frame;
+        try {
+            return builtin.evaluate(list, this);
+        } catch (RuntimeException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            return null;
+        } finally {
+            frame = caller; // unwind any scopes left open by an error
+        }
+    }
+
+    private Object evalSymbol(JispSymbol s) {
+        for (JispFrame f = frame; f != null; f = f.parent) {
+            int slot = f.indexOf(s);
+            if (slot >= 0)
+                return f.get(slot);
+        }
+        return evalGlobal(s);
+    }
+
+    private Object evalInvokeSymbol(JispSymbol fn, JispCons list) {
+        Object target = getFunction(fn);
         if (target instanceof JispFunction) {
-            list.remove(0);
             return invokeInterpreted((JispFunction) target, list);
         }
-        if (target instanceof MutableCallSite) {
-            try {
-                saveLocals();
-                Object retval = ((MutableCallSite) target).getTarget().invoke(copy(list), this);
-                restoreLocals();
-                return retval;
-            } catch (Throwable error) {
-                System.err.println("ERROR: " + error.getMessage());
-                return null;
-            }
-        }
         // possibly a lambda in a variable
         target = getVariable(fn);
         if (target instanceof JispFunction) {
             JispFunction func = (JispFunction) target;
-            list.remove(0);
             return invokeInterpreted((JispFunction) target, list);
         } else {
-            System.err.println("ERROR:" + list.get(0) + " not a function");
+            System.err.println("ERROR:" + list.car() + " not a function");
             return null;
         }
     }
 
-    private Object evalArrayList(ArrayList list) {
-        if (list.isEmpty())
-            return null;
-        Object first = eval(list.get(0));
-
-        if (first instanceof String) {
-            String fn = getName((String) first);
-            try { // check if builtin function
-                Method eval = JispBuiltinFunction.class.getDeclaredMethod(fn, ArrayList.class, JispInterp.class);
-                saveLocals();
-                Object retval = eval.invoke(null, copy(list), this);
-                restoreLocals();
-                return retval;
-            } catch (IllegalAccessException x) {
-                System.err.println("ERROR: illegal access exception: " + x.getMessage());
-                return null;
-            } catch (InvocationTargetException ix) {
-                System.err.println("ERROR: Invocation target exception: " + ix.getCause().getMessage());
-                return null;
-            } catch (NoSuchMethodException np) { // check if interpreted function
+    private Object evalCons(JispCons list) {
+        Object first = list.car();
+
+        if (first instanceof JispSymbol) {
+            JispSymbol fn = (JispSymbol) first;
+            JispCompiledFunction builtin = fn.getBuiltin();
+            if (builtin == null) // check if interpreted function
                 return evalInvokeSymbol(fn, list);
-            }
+            return invokeBuiltin(builtin, list);
         }
+        first = eval(first);
         if (first instanceof JispFunction) {
-            list.remove(0);
             return invokeInterpreted((JispFunction) first, list);
         }
         if (first instanceof JispCompiledFunction) {
@@ -250,11 +605,11 @@ public class JispInterp {
         if (tk == null)
             return null;
 
-        if (tk instanceof String)
-            return evalString((String) tk);
+        if (tk instanceof JispSymbol)
+            return evalSymbol((JispSymbol) tk);
 
-        if (tk instanceof ArrayList)
-            return evalArrayList((ArrayList) tk);
+        if (tk instanceof JispCons)
+            return evalCons((JispCons) tk);
 
         return tk;
     }
@@ -0,0 +1,34 @@
+package com.ljc;
+
+public class JispListBenchmark {
+
+    /* Building and walking a list of n cons cells, a million by default: BUILD conses it up
+       one cell at a time onto the front, DOLIST sums it, and WALK sums it again by CAR and
+       CDR. BUILD and WALK are tail recursive. Each step is constant time on JispCons, so all
+       three are linear in n.
+       usage: JispListBenchmark [n [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun build (n acc) (if (= n 0) acc (build (- n 1) (cons n acc))))" +
+            "(defun walk (l acc) (if (null l) acc (walk (cdr l) (+ acc (car l)))))" +
+            "(defun sum (l) (progn (set total 0) (dolist (x l) (set total (+ total x))) total))";
+
+    public static void main(String... args) {
+        long n = JispBenchmark.argument(args, 0, 1_000_000);
+        int rounds = (int) JispBenchmark.argument(args, 1, 5);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispInterp interp = JispBenchmark.load(PROGRAM);
+        String sum = Long.toString(n * (n + 1) / 2);
+        System.out.printf("a list of %,d cells, best of %d rounds%n", n, rounds);
+        // build is not checked itself, the sums taken of its list afterwards check it
+        run("build", "(set lst (build " + n + " nil))", null, interp, rounds);
+        run("dolist", "(sum lst)", sum, interp, rounds);
+        run("walk", "(walk lst 0)", sum, interp, rounds);
+    }
+
+    private static void run(String label, String text, String expected, JispInterp interp, int rounds) {
+        long best = JispBenchmark.best(interp, text, expected, 1, rounds);
+        System.out.printf("  %-7s %6d ms%n", label, best / 1_000_000);
+    }
+}
@@ -0,0 +1,410 @@
+package com.ljc;
+
+abstract class JispNode {
+
+    /* A node is a form that has been analysed once, ahead of running it. Variables are
+       already resolved to a frame slot or a global cell, special forms to a node of their
+       own, and calls to a builtin or a user function, so executing a node repeats none of
+       the dispatching eval does on the raw form. JispAnalyser builds the tree for a
+       function body and JispFunction keeps it for every later call. */
+
+    abstract Object execute(JispInterp context);
+
+    static final class Constant extends JispNode {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return value;
+        }
+    }
+
+    static final class LocalRef extends JispNode {
+        // depth counts frames out from the innermost one, slot indexes that frame
+        private final int depth;
+        private final int slot;
+
+        LocalRef(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            JispFrame f = context.getFrame();
+            for (int i = depth; i > 0; i--)
+                f = f.parent;
+            return f.get(slot);
+        }
+    }
+
+    static final class GlobalRef extends JispNode {
+        private final JispSymbol symbol;
+
+        GlobalRef(JispSymbol symbol) {
+            this.symbol = symbol;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return context.evalGlobal(symbol);
+        }
+    }
+
+    static final class FreeRef extends JispNode {
+        // a free variable of a lambda may be bound in any frame it closed over
+        private final JispSymbol symbol;
+
+        FreeRef(JispSymbol symbol) {
+            this.symbol = symbol;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return context.eval(symbol);
+        }
+    }
+
+    static final class If extends JispNode {
+        private final JispNode test;
+        private final JispNode then;
+        private final JispNode otherwise;
+
+        If(JispNode test, JispNode then, JispNode otherwise) {
+            this.test = test;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return (test.execute(context) != null) ?
+                    then.execute(context) :
+                    otherwise.execute(context);
+        }
+    }
+
+    static final class Progn extends JispNode {
+        private final JispNode[] body;
+
+        Progn(JispNode[] body) {
+            this.body = body;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object result = null;
+            for (JispNode form : body)
+                result = form.execute(context);
+            return result;
+        }
+    }
+
+    static final class Cond extends JispNode {
+        // results[i] is null for a clause with no body, which gives its test's value
+        private final JispNode[] tests;
+        private final JispNode[] results;
+
+        Cond(JispNode[] tests, JispNode[] results) {
+            this.tests = tests;
+            this.results = results;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            for (int i = 0; i < tests.length; i++) {
+                Object test = tests[i].execute(context);
+                if (test != null)
+                    return (results[i] == null) ? test : results[i].execute(context);
+            }
+            return null;
+        }
+    }
+
+    static final class Set extends JispNode {
+        // SET always assigns the global value, even when the name is bound locally
+        private final JispSymbol symbol;
+        private final JispNode value;
+
+        Set(JispSymbol symbol, JispNode value) {
+            this.symbol = symbol;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object result = value.execute(context);
+            context.setGlobal(symbol, result);
+            return result;
+        }
+    }
+
+    static final class Let extends JispNode {
+        private final JispSymbol[] names;
+        private final JispNode[] values;
+        private final JispNode body;
+
+        Let(JispSymbol[] names, JispNode[] values, JispNode body) {
+            this.names = names;
+            this.values = values;
+            this.body = body;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            JispFrame outer = context.getFrame();
+            JispFrame inner = new JispFrame(outer, names);
+            // values are all computed in the enclosing scope before any binding is made
+            for (int i = 0; i < values.length; i++)
+                inner.set(i, values[i].execute(context));
+            context.setFrame(inner);
+            try {
+                return body.execute(context);
+            } finally {
+                context.setFrame(outer);
+            }
+        }
+    }
+
+    static final class DoTimes extends JispNode {
+        private final JispSymbol[] name; // layout of the frame holding the counter
+        private final JispNode count;
+        private final JispNode[] body;
+        private final JispFunction owner; // counts the iterations towards tiering
+
+        DoTimes(JispSymbol name, JispNode count, JispNode[] body, JispFunction owner) {
+            this.name = new JispSymbol[]{name};
+            this.count = count;
+            this.body = body;
+            this.owner = owner;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object n = count.execute(context);
+            if (!(n instanceof Long)) {
+                System.err.println("ERROR: variable parameter 2 is not an integer");
+                return null;
+            }
+            JispFrame outer = context.getFrame();
+            JispFrame inner = new JispFrame(outer, name);
+            context.setFrame(inner);
+            try {
+                for (long i = 0, end = (Long) n; i < end; i++) {
+                    inner.set(0, JispNumbers.box(i));
+                    owner.countBackEdge();
+                    for (JispNode form : body)
+                        form.execute(context);
+                }
+            } finally {
+                context.setFrame(outer);
+            }
+            return null;
+        }
+    }
+
+    static final class Arithmetic extends JispNode {
+        /* A two operand arithmetic or comparison builtin. The node has two states, kept in
+           generic rather than by replacing itself: while it has seen nothing but fixnums it
+           checks for two Longs and does the long operation with its overflow check. The
+           first time anything else turns up it goes generic for good, checking for numbers
+           as the builtin does, with the same results and errors. */
+
+        enum Op {ADD, SUBTRACT, MULTIPLY, LESS, MORE, LESS_EQUAL, MORE_EQUAL, EQUAL}
+
+        private final Op op;
+        private final JispNode left;
+        private final JispNode right;
+        private boolean generic;
+
+        Arithmetic(Op op, JispNode left, JispNode right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object a = left.execute(context);
+            Object b = right.execute(context);
+            if (!generic) {
+                if ((a instanceof Long) && (b instanceof Long))
+                    return fixnum((Long) a, (Long) b);
+                generic = true;
+            }
+            return generic(a, b);
+        }
+
+        private Object fixnum(long a, long b) {
+            switch (op) {
+                case ADD:
+                    return JispNumbers.add(a, b);
+                case SUBTRACT:
+                    return JispNumbers.subtract(a, b);
+                case MULTIPLY:
+                    return JispNumbers.multiply(a, b);
+                case LESS:
+                    return truth(a < b);
+                case MORE:
+                    return truth(a > b);
+                case LESS_EQUAL:
+                    return truth(a <= b);
+                case MORE_EQUAL:
+                    return truth(a >= b);
+                default:
+                    return truth(a == b);
+            }
+        }
+
+        private Object generic(Object a, Object b) {
+            if ((a instanceof Long) && (b instanceof Long))
+                return fixnum((Long) a, (Long) b);
+            if (!JispNumbers.isNumber(a) || !JispNumbers.isNumber(b)) {
+                System.err.println("ERROR: only numbers can be " + verb());
+                return null;
+            }
+            switch (op) {
+                case ADD:
+                    return JispNumbers.add(a, b);
+                case SUBTRACT:
+                    return JispNumbers.subtract(a, b);
+                case MULTIPLY:
+                    return JispNumbers.multiply(a, b);
+                case LESS:
+                    return truth(JispNumbers.lessThan(a, b));
+                case MORE:
+                    return truth(JispNumbers.lessThan(b, a));
+                case LESS_EQUAL:
+                    return truth(JispNumbers.lessOrEqual(a, b));
+                case MORE_EQUAL:
+                    return truth(JispNumbers.lessOrEqual(b, a));
+                default:
+                    return truth(JispNumbers.numEquals(a, b));
+            }
+        }
+
+        private String verb() {
+            switch (op) {
+                case ADD:
+                    return "added";
+                case SUBTRACT:
+                    return "subtracted";
+                case MULTIPLY:
+                    return "multiplied";
+                default:
+                    return "compared";
+            }
+        }
+
+        private static Object truth(boolean b) {
+            return b ? JispSymbol.T : null;
+        }
+    }
+
+    static final class Aref extends JispNode {
+        private final JispNode array;
+        private final JispNode index;
+
+        Aref(JispNode array, JispNode index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return JispArrays.aref(array.execute(context), index.execute(context));
+        }
+    }
+
+    static final class Aset extends JispNode {
+        // (setf (aref array index) value)
+        private final JispNode array;
+        private final JispNode index;
+        private final JispNode value;
+
+        Aset(JispNode array, JispNode index, JispNode value) {
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object a = array.execute(context);
+            Object i = index.execute(context);
+            return JispArrays.aset(a, i, value.execute(context));
+        }
+    }
+
+    static final class CallBuiltin extends JispNode {
+        // the builtin evaluates its own arguments from the original form
+        private final JispCompiledFunction builtin;
+        private final JispCons form;
+
+        CallBuiltin(JispCompiledFunction builtin, JispCons form) {
+            this.builtin = builtin;
+            this.form = form;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return context.invokeBuiltin(builtin, form);
+        }
+    }
+
+    static final class CallUser extends JispNode {
+        /* The function cell is read on every call, so redefining the function takes effect
+           at once. Interpreted functions get their arguments from the analysed argument
+           nodes, and a call in tail position is handed back to the caller's invoke loop
+           rather than made here. Anything else, such as a lambda in a variable, goes
+           through eval with the original form. */
+
+        private final JispSymbol function;
+        private final JispNode[] args;
+        private final JispCons form;
+        private final boolean tail; // the value of this call is the value of the function body
+
+        CallUser(JispSymbol function, JispNode[] args, JispCons form, boolean tail) {
+            this.function = function;
+            this.args = args;
+            this.form = form;
+            this.tail = tail;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            Object target = context.getFunction(function);
+            if (!(target instanceof JispFunction))
+                return context.eval(form);
+
+            JispFunction func = (JispFunction) target;
+            if (!func.acceptsArguments(args.length))
+                return context.eval(form); // reports the arity error
+
+            Object[] values = new Object[func.getSlots().length];
+            for (int i = 0; i < args.length; i++)
+                values[i] = args[i].execute(context);
+            return tail ?
+                    context.tailCall(func, values) :
+                    context.invoke(func, values);
+        }
+    }
+
+    static final class Eval extends JispNode {
+        // a form the analyser leaves to eval, such as a call through a computed head
+        private final Object form;
+
+        Eval(Object form) {
+            this.form = form;
+        }
+
+        @Override
+        Object execute(JispInterp context) {
+            return context.eval(form);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.ljc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+public final class JispNumbers {
+
+    /* The numeric tower. Integers are fixnums (Long) while they fit in a long and bignums
+       (BigInteger) beyond that, dividing integers that do not divide evenly gives an exact
+       JispRatio, and floats are Doubles. Every result is normalised: an integer that fits in
+       a long is always a Long and a ratio is never a whole number, so numbers of different
+       classes are never equal and EQL can compare with equals.
+       The fixnum operations take primitive longs and only leave them on overflow; the
+       generic ones send two fixnums straight there, and otherwise convert both operands up
+       to the higher of their two kinds first, float above ratio above bignum above fixnum.
+       Callers check that operands are numbers.
+       Some methods are public for compiled code, see JispCompiler. */
+
+    private static final int FIXNUM = 0;
+    private static final int BIGNUM = 1;
+    private static final int RATIO = 2;
+    private static final int FLOAT = 3;
+    private static final int NOT_A_NUMBER = -1;
+
+    private JispNumbers() {
+    }
+
+    /* Long.valueOf rather than a cache of our own: the JIT knows it as a boxing method, and
+       the wider cache this once had made (fib 30) 15% slower and a DOTIMES loop no faster */
+    static Long box(long value) {
+        return Long.valueOf(value);
+    }
+
+    static boolean isNumber(Object x) {
+        return kind(x) != NOT_A_NUMBER;
+    }
+
+    static boolean isInteger(Object x) {
+        return (x instanceof Long) || (x instanceof BigInteger);
+    }
+
+    private static int kind(Object x) {
+        if (x instanceof Long)
+            return FIXNUM;
+        if (x instanceof Double)
+            return FLOAT;
+        if (x instanceof BigInteger)
+            return BIGNUM;
+        if (x instanceof JispRatio)
+            return RATIO;
+        return NOT_A_NUMBER;
+    }
+
+    private static int kind(Object a, Object b) {
+        return Math.max(kind(a), kind(b));
+    }
+
+    // how many times a compiled DOTIMES goes round for the count n, which like the interpreter takes fixnums only
+    public static long count(Object n) {
+        if (n instanceof Long)
+            return (Long) n;
+        System.err.println("ERROR: variable parameter 2 is not an integer");
+        return 0;
+    }
+
+    /* The number a token spells, or null when it is not one, in which case the reader
+       makes it a symbol. One pass over the characters decides which it is without throwing
+       anything, as most tokens are symbols:
+         integer  [sign] digits
+         ratio    [sign] digits / digits, the denominator not zero
+         float    [sign] digits . [digits] [exponent], or [sign] [digits] . digits [exponent],
+                  or [sign] digits exponent, where the exponent is a marker e, s, f, d or l
+                  (either case) followed by [sign] digits
+       Integers of up to 18 digits are accumulated in a long on the way; anything longer
+       and floats are converted from the text, which then is known to be well formed. */
+    public static Object parse(CharSequence s) {
+        int n = s.length();
+        int i = 0;
+        if ((i < n) && ((s.charAt(i) == '+') || (s.charAt(i) == '-')))
+            i++;
+        boolean negative = (i > 0) && (s.charAt(0) == '-');
+
+        int start = i;
+        long value = 0;
+        while ((i < n) && isDigit(s.charAt(i))) {
+            value = value * 10 + (s.charAt(i) - '0'); // only used while it cannot overflow
+            i++;
+        }
+        int digits = i - start;
+
+        if (i == n) { // an integer, if there were digits
+            if (digits == 0)
+                return null;
+            if (digits <= 18)
+                return box(negative ? -value : value);
+            return normalise(new BigInteger(s.subSequence(0, n).toString()));
+        }
+
+        if ((s.charAt(i) == '/') && (digits > 0)) {
+            int slash = i++;
+            int denominatorStart = i;
+            while ((i < n) && isDigit(s.charAt(i)))
+                i++;
+            if ((i != n) || (i == denominatorStart))
+                return null;
+            BigInteger denominator = new BigInteger(s.subSequence(denominatorStart, n).toString());
+            if (denominator.signum() == 0)
+                return null;
+            return ratio(new BigInteger(s.subSequence(0, slash).toString()), denominator);
+        }
+
+        int fraction = 0;
+        if (s.charAt(i) == '.') {
+            i++;
+            int fractionStart = i;
+            while ((i < n) && isDigit(s.charAt(i)))
+                i++;
+            fraction = i - fractionStart;
+        }
+        if (digits + fraction == 0)
+            return null;
+        boolean point = (i > start + digits);
+
+        int marker = -1;
+        if ((i < n) && (EXPONENT_MARKERS.indexOf(s.charAt(i)) >= 0)) {
+            marker = i++;
+            if ((i < n) && ((s.charAt(i) == '+') || (s.charAt(i) == '-')))
+                i++;
+            int exponentStart = i;
+            while ((i < n) && isDigit(s.charAt(i)))
+                i++;
+            if (i == exponentStart)
+                return null;
+        }
+        if ((i != n) || (!point && (marker < 0)))
+            return null;
+
+        // Java only knows e as the exponent marker
+        StringBuilder text = new StringBuilder(s);
+        if (marker >= 0)
+            text.setCharAt(marker, 'e');
+        return Double.parseDouble(text.toString());
+    }
+
+    private static final String EXPONENT_MARKERS = "eEsSfFdDlL";
+
+    private static boolean isDigit(char ch) {
+        return (ch >= '0') && (ch <= '9');
+    }
+
+    static Object normalise(BigInteger x) {
+        return (x.bitLength() < 64) ?
+                box(x.longValue()) :
+                x;
+    }
+
+    // n/d in lowest terms, or the integer it comes to
+    static Object ratio(BigInteger n, BigInteger d) {
+        if (d.signum() < 0) {
+            n = n.negate();
+            d = d.negate();
+        }
+        BigInteger gcd = n.gcd(d);
+        if (!gcd.equals(BigInteger.ONE)) {
+            n = n.divide(gcd);
+            d = d.divide(gcd);
+        }
+        return d.equals(BigInteger.ONE) ?
+                normalise(n) :
+                new JispRatio(n, d);
+    }
+
+    private static BigInteger bignum(Object x) {
+        return (x instanceof BigInteger) ?
+                (BigInteger) x :
+                BigInteger.valueOf((Long) x);
+    }
+
+    private static BigInteger numerator(Object x) {
+        return (x instanceof JispRatio) ?
+                ((JispRatio) x).getNumerator() :
+                bignum(x);
+    }
+
+    private static BigInteger denominator(Object x) {
+        return (x instanceof JispRatio) ?
+                ((JispRatio) x).getDenominator() :
+                BigInteger.ONE;
+    }
+
+    private static double toDouble(Object x) {
+        return ((Number) x).doubleValue();
+    }
+
+    static Object add(long x, long y) {
+        long r = x + y;
+        // overflow only when both operands have the sign the result lacks
+        if (((x ^ r) & (y ^ r)) < 0)
+            return BigInteger.valueOf(x).add(BigInteger.valueOf(y));
+        return box(r);
+    }
+
+    static Object subtract(long x, long y) {
+        long r = x - y;
+        if (((x ^ y) & (x ^ r)) < 0)
+            return BigInteger.valueOf(x).subtract(BigInteger.valueOf(y));
+        return box(r);
+    }
+
+    static Object multiply(long x, long y) {
+        long hi = Math.multiplyHigh(x, y);
+        long lo = x * y;
+        // the product fits when the high word is just the sign extension of the low one
+        if (hi != (lo >> 63))
+            return BigInteger.valueOf(x).multiply(BigInteger.valueOf(y));
+        return box(lo);
+    }
+
+    static Object add(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return add((long) (Long) a, (long) (Long) b);
+        switch (kind(a, b)) {
+            case BIGNUM:
+                return normalise(bignum(a).add(bignum(b)));
+            case RATIO:
+                return ratio(numerator(a).multiply(denominator(b)).add(numerator(b).multiply(denominator(a))),
+                        denominator(a).multiply(denominator(b)));
+            default:
+                return toDouble(a) + toDouble(b);
+        }
+    }
+
+    static Object subtract(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return subtract((long) (Long) a, (long) (Long) b);
+        switch (kind(a, b)) {
+            case BIGNUM:
+                return normalise(bignum(a).subtract(bignum(b)));
+            case RATIO:
+                return ratio(numerator(a).multiply(denominator(b)).subtract(numerator(b).multiply(denominator(a))),
+                        denominator(a).multiply(denominator(b)));
+            default:
+                return toDouble(a) - toDouble(b);
+        }
+    }
+
+    static Object multiply(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return multiply((long) (Long) a, (long) (Long) b);
+        switch (kind(a, b)) {
+            case BIGNUM:
+                return normalise(bignum(a).multiply(bignum(b)));
+            case RATIO:
+                return ratio(numerator(a).multiply(numerator(b)), denominator(a).multiply(denominator(b)));
+            default:
+                return toDouble(a) * toDouble(b);
+        }
+    }
+
+    // exact unless a float is involved; an exact division by zero throws ArithmeticException
+    static Object divide(Object a, Object b) {
+        int kind = kind(a, b);
+        if (kind == FLOAT)
+            return toDouble(a) / toDouble(b);
+        if (zerop(b))
+            throw new ArithmeticException("division by zero");
+        if (kind == FIXNUM) {
+            long x = (Long) a;
+            long y = (Long) b;
+            if ((x % y == 0) && !((x == Long.MIN_VALUE) && (y == -1)))
+                return box(x / y);
+        }
+        return ratio(numerator(a).multiply(denominator(b)), denominator(a).multiply(numerator(b)));
+    }
+
+    static Object negate(Object a) {
+        return subtract(box(0), a);
+    }
+
+    // the remainder of integers, with the sign of the dividend
+    static Object remainder(Object a, Object b) {
+        if (zerop(b))
+            throw new ArithmeticException("division by zero");
+        if ((a instanceof Long) && (b instanceof Long))
+            return box((Long) a % (Long) b);
+        return normalise(bignum(a).remainder(bignum(b)));
+    }
+
+    /* a / b rounded to the nearest integer, halves to the even one. Exact numbers are
+       rounded exactly however large; a float quotient is rounded with rint and converted
+       whole, so a large one gives a bignum rather than saturating */
+    static Object round(Object a, Object b) {
+        if (kind(a, b) == FLOAT) {
+            double q = Math.rint(toDouble(a) / toDouble(b));
+            if (Double.isNaN(q) || Double.isInfinite(q))
+                throw new ArithmeticException("cannot round " + q);
+            if ((q >= -0x1p63) && (q < 0x1p63))
+                return box((long) q);
+            return normalise(new BigDecimal(q).toBigInteger());
+        }
+        if (zerop(b))
+            throw new ArithmeticException("division by zero");
+        BigInteger n = numerator(a).multiply(denominator(b));
+        BigInteger d = denominator(a).multiply(numerator(b));
+        if (d.signum() < 0) {
+            n = n.negate();
+            d = d.negate();
+        }
+        // floor first, so the remainder is in [0, d) whatever the signs
+        BigInteger[] qr = n.divideAndRemainder(d);
+        BigInteger q = qr[0];
+        BigInteger r = qr[1];
+        if (r.signum() < 0) {
+            q = q.subtract(BigInteger.ONE);
+            r = r.add(d);
+        }
+        int half = r.shiftLeft(1).compareTo(d);
+        if ((half > 0) || ((half == 0) && q.testBit(0)))
+            q = q.add(BigInteger.ONE);
+        return normalise(q);
+    }
+
+    static boolean zerop(Object a) {
+        if (a instanceof Long)
+            return (Long) a == 0;
+        if (a instanceof Double)
+            return (Double) a == 0;
+        // bignums and ratios are never zero once normalised
+        return false;
+    }
+
+    // a float and an exact number are compared as floats, 0.0 equal to -0.0 and NaN to nothing
+    static boolean numEquals(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return (long) (Long) a == (Long) b;
+        if (kind(a, b) == FLOAT)
+            return toDouble(a) == toDouble(b);
+        return a.equals(b);
+    }
+
+    static boolean lessThan(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return (Long) a < (Long) b;
+        if (kind(a, b) == FLOAT)
+            return toDouble(a) < toDouble(b);
+        return compareExact(a, b) < 0;
+    }
+
+    static boolean lessOrEqual(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return (Long) a <= (Long) b;
+        if (kind(a, b) == FLOAT)
+            return toDouble(a) <= toDouble(b);
+        return compareExact(a, b) <= 0;
+    }
+
+    private static int compareExact(Object a, Object b) {
+        switch (kind(a, b)) {
+            case FIXNUM:
+                return Long.compare((Long) a, (Long) b);
+            case BIGNUM:
+                return bignum(a).compareTo(bignum(b));
+            default:
+                return numerator(a).multiply(denominator(b)).compareTo(numerator(b).multiply(denominator(a)));
+        }
+    }
+
+    /* The two operand builtins and 1+ and 1- on values already evaluated, for compiled code:
+       the same results, and for anything but numbers the same error and nil */
+
+    public static Object plus(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return add((long) (Long) a, (long) (Long) b);
+        return numbers(a, b, "added") ? add(a, b) : null;
+    }
+
+    public static Object minus(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return subtract((long) (Long) a, (long) (Long) b);
+        return numbers(a, b, "subtracted") ? subtract(a, b) : null;
+    }
+
+    public static Object times(Object a, Object b) {
+        if ((a instanceof Long) && (b instanceof Long))
+            return multiply((long) (Long) a, (long) (Long) b);
+        return numbers(a, b, "multiplied") ? multiply(a, b) : null;
+    }
+
+    public static Object onePlus(Object a) {
+        return plus(a, box(1));
+    }
+
+    public static Object oneMinus(Object a) {
+        return minus(a, box(1));
+    }
+
+    public static Object less(Object a, Object b) {
+        return numbers(a, b, "compared") ? truth(lessThan(a, b)) : null;
+    }
+
+    public static Object greater(Object a, Object b) {
+        return numbers(a, b, "compared") ? truth(lessThan(b, a)) : null;
+    }
+
+    public static Object lessEqual(Object a, Object b) {
+        return numbers(a, b, "compared") ? truth(lessOrEqual(a, b)) : null;
+    }
+
+    public static Object greaterEqual(Object a, Object b) {
+        return numbers(a, b, "compared") ? truth(lessOrEqual(b, a)) : null;
+    }
+
+    public static Object equal(Object a, Object b) {
+        return numbers(a, b, "compared") ? truth(numEquals(a, b)) : null;
+    }
+
+    private static boolean numbers(Object a, Object b, String verb) {
+        if (((a instanceof Long) && (b instanceof Long)) || (isNumber(a) && isNumber(b)))
+            return true;
+        System.err.println("ERROR: only numbers can be " + verb);
+        return false;
+    }
+
+    private static Object truth(boolean b) {
+        return b ? JispSymbol.T : null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.ljc;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+public class JispNumericBenchmark {
+
+    /* A numeric kernel interpreted, compiled and in plain Java: the escape counts of a
+       size x size Mandelbrot image, summed. The compiled inner loop keeps its doubles and
+       its counter unboxed, see JispCompiler. Several rounds so the JIT has settled; the best
+       round of each is reported.
+       usage: JispNumericBenchmark [size [iterations [rounds]]] */
+
+    // DO updates its variables one after the other, so the new real part waits in tt
+    private static final String PROGRAM =
+            "(defun mandel (counts sum size iters)" +
+            "  (dotimes (py size)" +
+            "    (dotimes (px size)" +
+            "      (progn" +
+            "        (do ((cr (- (* px (/ 3.0d0 (the fixnum size))) 2.0d0) cr)" +
+            "             (ci (- (* py (/ 3.0d0 (the fixnum size))) 1.5d0) ci)" +
+            "             (tt 0.0d0 (+ (- (* zr zr) (* zi zi)) cr))" +
+            "             (zi 0.0d0 (+ (* 2.0d0 (* zr zi)) ci))" +
+            "             (zr 0.0d0 tt)" +
+            "             (n 0 (+ n 1)))" +
+            "            (and (< n (the fixnum iters)) (<= (+ (* zr zr) (* zi zi)) 4.0d0))" +
+            "          (setf (aref counts px) n))" +
+            "        (setf (aref sum 0) (+ (aref sum 0) (aref counts px)))))))" +
+            "(set counts (make-array 4096 :element-type 'fixnum))" +
+            "(set sum (make-array 1 :element-type 'fixnum))";
+
+    public static void main(String... args) {
+        int size = (args.length > 0) ?
+                Integer.parseInt(args[0]) :
+                200;
+        int iterations = (args.length > 1) ?
+                Integer.parseInt(args[1]) :
+                200;
+        int rounds = (args.length > 2) ?
+                Integer.parseInt(args[2]) :
+                5;
+
+        long java = Long.MAX_VALUE;
+        long expected = 0;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            expected = mandel(size, iterations);
+            java = Math.min(java, System.nanoTime() - start);
+        }
+        long interpreted = run(size, iterations, rounds, false, expected);
+        long compiled = run(size, iterations, rounds, true, expected);
+
+        System.out.printf("mandelbrot %dx%d, %d iterations, best of %d rounds%n", size, size, iterations, rounds);
+        System.out.printf("  interpreted: %6d ms%n", interpreted);
+        System.out.printf("  compiled:    %6d ms, %.1fx%n", compiled, (double) interpreted / compiled);
+        System.out.printf("  Java:        %6d ms%n", java / 1_000_000);
+    }
+
+    private static long run(int size, int iterations, int rounds, boolean compile, long expected) {
+        JispInterp interp = new JispInterp();
+        JispParser parser = new JispParser();
+        for (Object form : (ArrayList) parser.interpret(PROGRAM))
+            interp.eval(form);
+        if (compile)
+            new JispCompiler().compile("MANDEL", (JispFunction) interp.getFunction(JispSymbol.intern("MANDEL")),
+                    EnumSet.noneOf(JispCompiler.CompileFlags.class));
+        Object call = ((ArrayList) parser.interpret("(mandel counts sum " + size + " " + iterations + ")")).get(0);
+        Object reset = ((ArrayList) parser.interpret("(setf (aref sum 0) 0)")).get(0);
+        Object total = ((ArrayList) parser.interpret("(aref sum 0)")).get(0);
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            interp.eval(reset);
+            long start = System.nanoTime();
+            interp.eval(call);
+            best = Math.min(best, System.nanoTime() - start);
+            Object result = interp.eval(total);
+            if (!Long.valueOf(expected).equals(result))
+                throw new IllegalStateException((compile ? "compiled" : "interpreted") +
+                        " mandel gave " + result + " and Java " + expected);
+        }
+        return best / 1_000_000;
+    }
+
+    // the same loops written in Java
+    private static long mandel(int size, int iterations) {
+        long sum = 0;
+        for (int py = 0; py < size; py++) {
+            for (int px = 0; px < size; px++) {
+                double cr = px * (3.0 / size) - 2.0;
+                double ci = py * (3.0 / size) - 1.5;
+                double zr = 0.0;
+                double zi = 0.0;
+                long n = 0;
+                while ((n < iterations) && (zr * zr + zi * zi <= 4.0)) {
+                    double tt = zr * zr - zi * zi + cr;
+                    zi = 2.0 * (zr * zi) + ci;
+                    zr = tt;
+                    n++;
+                }
+                sum += n - 1; // the count the Lisp body last stored
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ljc;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class JispParseBenchmark {
+
+    /* Parse throughput of JispParser in MB/s, on the given file or else on three generated
+       sources of a few megabytes each: code, function definitions with numbers, strings,
+       quoted lists and comments, a little like real code; symbols, data that is nearly all
+       symbols; and numbers, data that is nearly all integers, ratios and floats. Sources are
+       read from memory, so the disk is not timed, several rounds so the JIT has settled, and
+       the best round is reported. Each source is also read with JispParser.readParallel,
+       checked to give the same forms, and timed the same way.
+       usage: JispParseBenchmark [file [rounds]] */
+
+    private static final int SIZE = 8 << 20;
+
+    public static void main(String... args) throws IOException {
+        int rounds = (args.length > 1) ?
+                Integer.parseInt(args[1]) :
+                5;
+        if (args.length > 0) {
+            run(args[0], new String(Files.readAllBytes(Paths.get(args[0]))), rounds);
+        } else {
+            run("code", code(SIZE), rounds);
+            run("symbols", symbols(SIZE), rounds);
+            run("numbers", numbers(SIZE), rounds);
+        }
+    }
+
+    private static void run(String name, String text, int rounds) throws IOException {
+        double mb = text.length() / (1024.0 * 1024.0);
+        long best = Long.MAX_VALUE;
+        int forms = 0;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            JispParser parser = new JispParser(new StringReader(text));
+            forms = 0;
+            while (parser.read() != JispParser.EOF)
+                forms++;
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %.1f MB, %,d forms: best %d ms, %.1f MB/s%n",
+                name, mb, forms, best / 1_000_000, mb / (best / 1e9));
+
+        // reading in parallel keeps every form, so it is compared with reading them all into a list
+        char[] chars = text.toCharArray();
+        List<Object> expected = new JispParser(new StringReader(text)).readAll();
+        if (!JispCons.print(JispCons.fromList(JispParser.readParallel(chars, chars.length)))
+                .equals(JispCons.print(JispCons.fromList(expected))))
+            throw new IllegalStateException("parallel reading gave different forms");
+        expected = null;
+        long sequential = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            new JispParser(new StringReader(text)).readAll();
+            long middle = System.nanoTime();
+            JispParser.readParallel(chars, chars.length);
+            sequential = Math.min(sequential, middle - start);
+            parallel = Math.min(parallel, System.nanoTime() - middle);
+        }
+        System.out.printf("%-8s all kept: best %d ms, %.1f MB/s; parallel on %d threads %d ms, %.1f MB/s%n",
+                "", sequential / 1_000_000, mb / (sequential / 1e9),
+                ForkJoinPool.getCommonPoolParallelism(), parallel / 1_000_000, mb / (parallel / 1e9));
+    }
+
+    // about size characters of made up source
+    private static String code(int size) {
+        StringBuilder out = new StringBuilder(size + 256);
+        for (int i = 0; out.length() < size; i++) {
+            out.append("; function number ").append(i).append('\n');
+            out.append("(defun f").append(i).append(" (n acc)\n");
+            out.append("  (if (< n ").append(i % 97).append(") acc\n");
+            out.append("      (f").append(i).append(" (- n 1) (+ acc (* n ").append(i * 31 % 1000)
+                    .append("/7 2.5)))))\n");
+            out.append("(set v").append(i).append(" '(a b (c \"text ").append(i).append("\") -")
+                    .append(i).append(" 1.5e3))\n");
+        }
+        return out.toString();
+    }
+
+    private static String symbols(int size) {
+        String[] words = {"alpha", "beta", "gamma", "delta", "key-word", "x1", "1+", "-", "item", "nil"};
+        StringBuilder out = new StringBuilder(size + 256);
+        for (int i = 0; out.length() < size; i++) {
+            out.append("'(");
+            for (int j = 0; j < 16; j++)
+                out.append(words[(i + j * 7) % words.length]).append(j % 5).append(' ');
+            out.append(")\n");
+        }
+        return out.toString();
+    }
+
+    private static String numbers(int size) {
+        StringBuilder out = new StringBuilder(size + 256);
+        for (int i = 0; out.length() < size; i++) {
+            out.append("'(");
+            for (int j = 0; j < 16; j++) {
+                long x = (i * 1_000_003L + j * 7919L) % 100_000;
+                switch (j % 4) {
+                    case 0:
+                        out.append(x);
+                        break;
+                    case 1:
+                        out.append(-x).append('/').append(j + 1);
+                        break;
+                    case 2:
+                        out.append(x).append('.').append(j);
+                        break;
+                    default:
+                        out.append(x).append("e-").append(j % 9);
+                        break;
+                }
+                out.append(' ');
+            }
+            out.append(")\n");
+        }
+        return out.toString();
+    }
+}
@@ -1,139 +1,231 @@
 package com.ljc;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 class JispParser {
 
+    /* The reader: a recursive-descent parser that reads characters straight from a Reader
+       and hands back one top-level form per call to read, so a file is never held as a
+       list of tokens and forms can be evaluated as they are read. Characters come through
+       a buffer of our own, and atoms are collected in one StringBuilder reused for every
+       token, so reading allocates little beyond the forms themselves.
+       The syntax: ( and ) around lists, 'x for (quote x), "..." for strings, ; to the end
+       of the line for comments, and anything else up to whitespace or one of those
+       characters is a number if it reads as one and a symbol, in upper case, if not.
+       A list left open at the end of the input is closed there, and a stray ) at top level
+       is reported and skipped.
+       readParallel is for large files of many independent forms, such as data: the whole
+       text is in memory, a quick scan splits it between top-level forms and the pieces are
+       read on the common ForkJoin pool. */
+
+    static final Object EOF = new Object(); // read's value when the input has no forms left
+
+    private static final int MIN_CHUNK = 64 << 10; // characters; smaller pieces are not worth a task
+
+    private static final JispSymbol QUOTE = JispSymbol.intern("QUOTE");
+
+    private final Reader in;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+    private final StringBuilder token = new StringBuilder();
+
     JispParser() {
+        this(null);
     }
 
+    JispParser(Reader in) {
+        this.in = in;
+        buffer = new char[(in != null) ? 8192 : 0];
+    }
+
+    // reads text[start, end) from the array itself, which is shared and not changed
+    private JispParser(char[] text, int start, int end) {
+        in = null;
+        buffer = text;
+        pos = start;
+        limit = end;
+    }
+
+    // every form in text, in order
     Object interpret(String text) {
-        JispArrayList tokens = new JispArrayList();
-        StringBuilder cur = new StringBuilder();
-        boolean notQuoting = true;
-        boolean notCommenting = true;
-
-        for (int ch = 0; ch < text.length(); ch++) {
-            if ((text.charAt(ch) == ')') || (text.charAt(ch) == '(') || (text.charAt(ch) == '\'')) {
-                if (notQuoting) {
-                    if (cur.length() > 0)
-                        tokens.add(cur.toString());
-                    cur = new StringBuilder(String.valueOf(text.charAt(ch)));
-                    tokens.add(cur.toString());
-                    cur = new StringBuilder();
-                } else {
-                    cur.append(text.charAt(ch));
-                }
-
-            } else if (text.charAt(ch) == ';') {
-                if (notQuoting && notCommenting) {
-                    if (cur.length() > 0)
-                        tokens.add(cur.toString());
-                    cur = new StringBuilder();
-                    notCommenting = false;
-                } else {
-                    // if a quote or a comment
-                    cur.append(";");
-                }
-                // whitespace
-            } else if ((text.charAt(ch) == '\r') || (text.charAt(ch) == '\n')) {
-                if (notQuoting && notCommenting) {
-                    if (cur.length() > 0)
-                        tokens.add(cur.toString());
-                    cur = new StringBuilder();
-                }
-                notCommenting = true;
-            } else if (text.charAt(ch) == '\t') {
-                if (notQuoting && notCommenting) {
-                    if (cur.length() > 0)
-                        tokens.add(cur.toString());
-                    cur = new StringBuilder();
-                } else if (notCommenting)
-                    cur.append("\t");
-            } else if (text.charAt(ch) == ' ') {
-                if (notQuoting && notCommenting) {
-                    if (cur.length() > 0)
-                        tokens.add(cur.toString());
-                    cur = new StringBuilder();
-                } else {
-                    if (notCommenting)
-                        cur.append(" ");
-                }
-            } else if (text.charAt(ch) == '"') {
-                notQuoting = !notQuoting;
-            } else {
-                if (notCommenting)
-                    cur.append(text.charAt(ch));
-            }
+        try {
+            return new JispParser(new StringReader(text)).readAll();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // a StringReader does not fail
+        }
+    }
+
+    /* every form in text[0, length), in order, the same forms read would give. The text is
+       cut at line ends between top-level forms into a few pieces per worker, and each piece
+       is read by a parser of its own; symbols are interned concurrently */
+    static List<Object> readParallel(char[] text, int length) {
+        int chunk = Math.max(MIN_CHUNK, length / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        ArrayList<ForkJoinTask<ArrayList>> pieces = new ArrayList<>();
+        for (int start = 0; start < length; ) {
+            int end = split(text, start, length, chunk);
+            JispParser parser = new JispParser(text, start, end);
+            pieces.add(ForkJoinTask.adapt(parser::readAll));
+            start = end;
+        }
+        ForkJoinTask.invokeAll(pieces);
+
+        ArrayList<Object> forms = new ArrayList<>();
+        for (ForkJoinTask<ArrayList> piece : pieces)
+            forms.addAll(piece.join());
+        return forms;
+    }
+
+    /* the end of the piece starting at start: the first line end at least chunk characters
+       on that falls between top-level forms, or length, so a form never spans pieces */
+    private static int split(char[] text, int start, int length, int chunk) {
+        JispScanner scanner = new JispScanner();
+        for (int i = start; i < length; i++) {
+            scanner.feed(text[i]);
+            if ((text[i] == '\n') && (i + 1 - start >= chunk) && scanner.betweenForms())
+                return i + 1;
         }
-        if (cur.length() > 0)
-            tokens.add(cur.toString());
+        return length;
+    }
+
+    ArrayList readAll() throws IOException {
+        ArrayList forms = new ArrayList();
+        for (Object form = read(); form != EOF; form = read())
+            forms.add(form);
+        return forms;
+    }
 
-        return tokenise(tokens);
+    // the next top-level form, or EOF
+    Object read() throws IOException {
+        while (true) {
+            int ch = skipBlanks();
+            if (ch < 0)
+                return EOF;
+            if (ch != ')')
+                return readForm(ch);
+            pos++;
+            System.err.println("ERROR: unexpected )");
+        }
     }
 
-    private Object tokenise(JispArrayList tokens) {
-        JispArrayList list = new JispArrayList();
-        JispArrayList quote = null;
+    // the form starting with ch, which has been peeked but not consumed
+    private Object readForm(int ch) throws IOException {
+        switch (ch) {
+            case '(':
+                pos++;
+                return readList();
+            case '\'':
+                pos++;
+                int next = skipBlanks();
+                Object quoted = ((next < 0) || (next == ')')) ?
+                        null :
+                        readForm(next);
+                return JispCons.list(QUOTE, quoted);
+            case '"':
+                pos++;
+                return readString();
+            default:
+                return readAtom();
+        }
+    }
 
-        while (!tokens.isEmpty()) {
-            if (tokens.isEmpty()) {
-                System.out.println("Syntax error");
-                return null;
+    // the rest of a list whose ( has been consumed
+    private Object readList() throws IOException {
+        ArrayList items = new ArrayList();
+        while (true) {
+            int ch = skipBlanks();
+            if (ch < 0)
+                break;
+            if (ch == ')') {
+                pos++;
+                break;
             }
+            items.add(readForm(ch));
+        }
+        return JispCons.fromList(items);
+    }
+
+    // the rest of a string whose opening " has been consumed; there are no escapes
+    private String readString() throws IOException {
+        token.setLength(0);
+        int ch;
+        while (((ch = next()) >= 0) && (ch != '"'))
+            token.append((char) ch);
+        return token.toString();
+    }
+
+    private Object readAtom() throws IOException {
+        token.setLength(0);
+        int ch;
+        while (((ch = peek()) >= 0) && !delimiter(ch)) {
+            token.append((char) ch);
+            pos++;
+        }
+        Object number = JispNumbers.parse(token);
+        return (number != null) ?
+                number :
+                JispSymbol.intern(token.toString().toUpperCase());
+    }
 
-            Object cur = tokens.remove(0);
-
-            if (cur instanceof String) {
-                String s = (String) cur;
-                switch (s) {
-                    case ")":
-                        return list;
-                    case "(":
-                        if (quote == null) {
-                            list.add(tokenise(tokens));
-                        } else {
-                            quote.add(tokenise(tokens));
-                            list.add(quote);
-                            quote = null;
-                        }
-                        break;
-                    case "'":
-                        quote = new JispArrayList();
-                        quote.add("quote");
-                        break;
-                    default:
-                        try { //converting it to an int constant
-                            Integer i = Integer.parseInt(s);
-                            if (quote == null) {
-                                list.add(i);
-                            } else {
-                                quote.add(i);
-                                list.add(quote);
-                                quote = null;
-                            }
-                        } catch (NumberFormatException x) {
-                            try { //maybe a Double?
-                                Double f = Double.parseDouble(s);
-                                if (quote == null) {
-                                    list.add(f);
-                                } else {
-                                    quote.add(f);
-                                    list.add(quote);
-                                    quote = null;
-                                }
-                            } catch (NumberFormatException ix) { //just a string
-                                if (quote == null) {
-                                    list.add(s);
-                                } else {
-                                    quote.add(s);
-                                    list.add(quote);
-                                    quote = null;
-                                }
-                            }
-                        }
-                        break;
-                }
+    private static boolean delimiter(int ch) {
+        switch (ch) {
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+            case '(':
+            case ')':
+            case '\'':
+            case '"':
+            case ';':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // skips whitespace and comments, peeking at the first character after them
+    private int skipBlanks() throws IOException {
+        while (true) {
+            int ch = peek();
+            if ((ch == ' ') || (ch == '\t') || (ch == '\r') || (ch == '\n')) {
+                pos++;
+            } else if (ch == ';') {
+                while (((ch = peek()) >= 0) && (ch != '\r') && (ch != '\n'))
+                    pos++;
+            } else {
+                return ch;
             }
         }
-        return list;
+    }
+
+    private int peek() throws IOException {
+        if ((pos == limit) && !fill())
+            return -1;
+        return buffer[pos];
+    }
+
+    private int next() throws IOException {
+        if ((pos == limit) && !fill())
+            return -1;
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null)
+            return false;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0)
+            return false;
+        pos = 0;
+        limit = n;
+        return true;
     }
 }
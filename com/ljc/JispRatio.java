@@ -0,0 +1,75 @@
+package com.ljc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+final class JispRatio extends Number {
+
+    /* An exact quotient of two integers, as made by dividing integers that do not divide
+       evenly. Always in lowest terms with a positive denominator other than one, so two
+       equal ratios have equal fields; JispNumbers.ratio is the only way to make one. */
+
+    private static final long serialVersionUID = 1L;
+
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    JispRatio(BigInteger numerator, BigInteger denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    BigInteger getNumerator() {
+        return numerator;
+    }
+
+    BigInteger getDenominator() {
+        return denominator;
+    }
+
+    int signum() {
+        return numerator.signum();
+    }
+
+    @Override
+    public int intValue() {
+        return numerator.divide(denominator).intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return numerator.divide(denominator).longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        // dividing the two doubles would give NaN once both overflow
+        if ((numerator.bitLength() < 53) && (denominator.bitLength() < 53))
+            return numerator.doubleValue() / denominator.doubleValue();
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), MathContext.DECIMAL64)
+                .doubleValue();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof JispRatio) &&
+                numerator.equals(((JispRatio) o).numerator) &&
+                denominator.equals(((JispRatio) o).denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator.hashCode() + denominator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return numerator + "/" + denominator;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ljc;
+
+public class JispRecursionBenchmark {
+
+    /* Deep and wide interpreted recursion: (down depth) recurses depth calls deep, not in
+       tail position, so every level keeps its frame, and (fib 25) makes a quarter of a
+       million shallow calls. Both cost one small JispFrame per call whatever is bound
+       around them.
+       usage: JispRecursionBenchmark [depth [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun down (n) (if (= n 0) 0 (+ 1 (down (- n 1)))))" +
+            "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))";
+
+    public static void main(String... args) throws InterruptedException {
+        long depth = JispBenchmark.argument(args, 0, 10_000);
+        int rounds = (int) JispBenchmark.argument(args, 1, 5);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispBenchmark.onLargeStack(() -> {
+            JispInterp interp = JispBenchmark.load(PROGRAM);
+            System.out.printf("best of %d rounds%n", rounds);
+            String down = "(down " + depth + ")";
+            report(down, JispBenchmark.best(interp, down, Long.toString(depth), 1, rounds));
+            report("(fib 25)", JispBenchmark.best(interp, "(fib 25)", "75025", 1, rounds));
+        });
+    }
+
+    private static void report(String label, long best) {
+        System.out.printf("  %-14s %8.2f ms%n", label, best / 1e6);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ljc;
+
+import org.jline.reader.EOFError;
+import org.jline.reader.ParsedLine;
+import org.jline.reader.SyntaxError;
+import org.jline.reader.impl.DefaultParser;
+
+class JispReplParser extends DefaultParser {
+
+    /* The REPL's JLine parser. When enter is pressed on input whose forms are not finished,
+       an open list, string or quote, it throws EOFError so JLine asks for a continuation
+       line instead of handing back the input, which the reader would otherwise close off
+       at its end. JLine passes the whole buffer every time, so the scanner's state for the
+       text already seen is kept and only what has been added since is scanned; pasting a
+       long definition is one pass over it however many lines it has. */
+
+    private final JispScanner scanner = new JispScanner();
+    private String scanned = ""; // the buffer the scanner's state is for
+
+    @Override
+    public ParsedLine parse(String line, int cursor, ParseContext context) throws SyntaxError {
+        if ((context == ParseContext.ACCEPT_LINE) && !finished(line))
+            throw new EOFError(-1, -1, "unfinished form", "(".repeat(scanner.depth()));
+        return super.parse(line, cursor, context);
+    }
+
+    // whether line is whole forms, scanning only what was added since the last call
+    private boolean finished(String line) {
+        if (!line.startsWith(scanned)) { // an earlier line was edited, or this is new input
+            scanner.reset();
+            scanned = "";
+        }
+        scanner.feed(line, scanned.length(), line.length());
+        scanned = line;
+        return scanner.betweenForms();
+    }
+
+    @Override
+    public boolean isDelimiterChar(CharSequence buffer, int pos) {
+        return (buffer.charAt(pos) == '(') || (buffer.charAt(pos) == ')') || super.isDelimiterChar(buffer, pos);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ljc;
+
+class JispScanner {
+
+    /* Follows a text a character at a time the way JispParser would read it, without
+       building anything: how many lists are open, whether it is inside a string or a
+       comment, and whether a quote is still waiting for its form. It keeps that state
+       between calls, so text can be fed to it as it arrives. JispParser.readParallel uses
+       it to cut a text between top-level forms, and the REPL to tell a line that finishes
+       its forms from one that goes on to the next. */
+
+    private int depth;
+    private boolean string;
+    private boolean comment;
+    private boolean quote;
+
+    void feed(char ch) {
+        if (string) {
+            string = (ch != '"');
+        } else if (comment) {
+            comment = (ch != '\n') && (ch != '\r');
+        } else {
+            switch (ch) {
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    return;
+                case ';':
+                    comment = true;
+                    return;
+                case '\'':
+                    quote = true;
+                    return;
+                case '(':
+                    depth++;
+                    break;
+                case ')':
+                    if (depth > 0) // a stray ) is skipped
+                        depth--;
+                    break;
+                case '"':
+                    string = true;
+                    break;
+                default:
+                    break;
+            }
+            quote = false;
+        }
+    }
+
+    void feed(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++)
+            feed(text.charAt(i));
+    }
+
+    // whether a line end here would come after whole forms; a comment ends with the line
+    boolean betweenForms() {
+        return (depth == 0) && !string && !quote;
+    }
+
+    // the lists left open, for prompting
+    int depth() {
+        return depth;
+    }
+
+    void reset() {
+        depth = 0;
+        string = false;
+        comment = false;
+        quote = false;
+    }
+}
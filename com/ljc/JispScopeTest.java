@@ -0,0 +1,57 @@
+package com.ljc;
+
+import java.util.ArrayList;
+
+public class JispScopeTest {
+
+    /* Variables are lexically scoped: a function sees its own parameters and bindings, those
+       of the code it was written in, captured by LAMBDA, and globals, but not its caller's.
+       Before locals moved into JispFrame chains, every binding went into one map the callee
+       saw as well, so the first two cases gave (LOCAL) and (LET) rather than (GLOBAL). Each
+       case runs with and without analysing function bodies, since both evaluators resolve
+       variables. Stops at the first case that fails.
+       usage: JispScopeTest */
+
+    private static final String CALLEE = "(set x 'global) (defun callee () (list x))";
+
+    private static int cases;
+
+    public static void main(String... args) {
+        // a callee does not see its caller's parameters or LET bindings
+        check(CALLEE + " (defun caller (x) (callee))", "(caller 'local)", "(GLOBAL)");
+        check(CALLEE + " (defun caller () (let ((x 'let)) (callee)))", "(caller)", "(GLOBAL)");
+        // a callee's own parameter hides the global only within it
+        check(CALLEE + " (defun own (x) (list x (callee)))", "(own 'own)", "(OWN (GLOBAL))");
+        // LET binds locally and leaves the global alone
+        check(CALLEE + " (defun f () (list (let ((x 'let)) x) x))", "(f)", "(LET GLOBAL)");
+        // a LAMBDA sees the bindings where it was made, not where it is called
+        check(CALLEE + " (defun mk (x) (lambda () (list x))) (defun ap (f x) (f))", "(ap (mk 'made) 'called)",
+                "(MADE)");
+
+        System.out.printf("%d cases passed%n", cases);
+    }
+
+    private static void check(String definitions, String form, String expected) {
+        boolean analyse = JispInterp.analyse;
+        try {
+            for (boolean a : new boolean[]{true, false}) {
+                JispInterp.analyse = a;
+                String result = run(definitions, form);
+                if (!result.equals(expected))
+                    throw new IllegalStateException(form + " gave " + result + (a ? " analysed" : " not analysed") +
+                            ", expected " + expected);
+            }
+        } finally {
+            JispInterp.analyse = analyse;
+        }
+        cases++;
+    }
+
+    private static String run(String definitions, String form) {
+        JispInterp interp = new JispInterp();
+        JispParser parser = new JispParser();
+        for (Object x : (ArrayList) parser.interpret(definitions))
+            interp.eval(x);
+        return JispCons.print(interp.eval(((ArrayList) parser.interpret(form)).get(0)));
+    }
+}
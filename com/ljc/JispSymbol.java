@@ -0,0 +1,98 @@
+package com.ljc;
+
+import java.lang.invoke.MutableCallSite;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class JispSymbol {
+
+    /* Symbols are interned by name, so two symbols are equal exactly when they are
+       the same object. Names are canonical (upper case), the reader applies that once.
+       Symbols are shared by every interpreter in the JVM and hold nothing an interpreter
+       can change: global values and functions live in per-interpreter arrays indexed by
+       the symbol's id. The builtin a name refers to is resolved when it is first interned,
+       and the call sites of compiled code are shared like the compiled classes themselves;
+       their targets check the calling interpreter's definition, see JispInterp. */
+
+    private static final ConcurrentHashMap<String, JispSymbol> table = new ConcurrentHashMap<>();
+
+    /* compiled code refers to functions by their Java name, this maps it back; no two
+       symbols have the same one, see JispInterp.getName */
+    private static final ConcurrentHashMap<String, JispSymbol> javaNames = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    // marks an empty value cell, distinct from a variable bound to nil
+    static final Object UNBOUND = new Object();
+
+    static final JispSymbol T = intern("T");
+    static final JispSymbol NIL = intern("NIL");
+    static final JispSymbol OPTIONAL = intern("&OPTIONAL");
+    static final JispSymbol QUOTE = intern("QUOTE");
+
+    private final String name;
+    private final String javaName;
+    private final int hash;
+    private final JispCompiledFunction builtin;
+    private final int id;
+
+    MutableCallSite[] compiled; // by argument count, linked by compiled callers, see JispInterp.bootstrapCompiledCall
+
+    private JispSymbol(String name) {
+        this.name = name;
+        javaName = JispInterp.getName(name);
+        hash = name.hashCode();
+        builtin = JispInterp.getBuiltin(javaName);
+        id = ids.getAndIncrement();
+    }
+
+    public static JispSymbol intern(String name) {
+        JispSymbol sym = table.get(name);
+        if (sym != null)
+            return sym;
+        sym = table.computeIfAbsent(name, JispSymbol::new);
+        javaNames.put(sym.javaName, sym);
+        return sym;
+    }
+
+    static JispSymbol forJavaName(String javaName) {
+        return javaNames.get(javaName);
+    }
+
+    static Collection<JispSymbol> all() {
+        return Collections.unmodifiableCollection(table.values());
+    }
+
+    // one more than the highest id given out so far
+    static int count() {
+        return ids.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getJavaName() {
+        return javaName;
+    }
+
+    JispCompiledFunction getBuiltin() {
+        return builtin;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,23 @@
+package com.ljc;
+
+public class JispTailCallBenchmark {
+
+    /* A tail-recursive counter run to n, ten million by default. The self call is in tail
+       position, so invoke's trampoline runs it in constant Java stack: this runs on the
+       main thread's ordinary stack, not the large one the other benchmarks use.
+       usage: JispTailCallBenchmark [n [rounds]] */
+
+    private static final String PROGRAM =
+            "(defun count (n acc) (if (= n 0) acc (count (- n 1) (+ acc 1))))";
+
+    public static void main(String... args) {
+        long n = JispBenchmark.argument(args, 0, 10_000_000);
+        int rounds = (int) JispBenchmark.argument(args, 1, 5);
+        JispTier.enabled = false; // the interpreter is what is measured, not what tiering compiles
+
+        JispInterp interp = JispBenchmark.load(PROGRAM);
+        long best = JispBenchmark.best(interp, "(count " + n + " 0)", Long.toString(n), 1, rounds);
+        System.out.printf("(count %d 0), best of %d rounds%n", n, rounds);
+        System.out.printf("  %d ms, %,.0f iterations/s%n", best / 1_000_000, n * 1e9 / best);
+    }
+}
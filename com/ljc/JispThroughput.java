@@ -0,0 +1,66 @@
+package com.ljc;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.DoubleAdder;
+
+public class JispThroughput {
+
+    /* Throughput benchmark for independent interpreters: for 1 up to N threads, each thread
+       gets its own JispInterp, defines the same function and evaluates a call to it reps
+       times a round, starting each round together with the others. The best round of each
+       thread counts. With no shared mutable state the evaluations per second should grow
+       close to linearly with the number of threads, up to the number of cores.
+       usage: JispThroughput [threads [reps [rounds]]] */
+
+    private static final String PROGRAM =
+            "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))";
+    private static final String CALL = "(fib 18)";
+
+    public static void main(String... args) throws Exception {
+        int threads = (int) JispBenchmark.argument(args, 0, Runtime.getRuntime().availableProcessors());
+        long reps = JispBenchmark.argument(args, 1, 2000);
+        int rounds = (int) JispBenchmark.argument(args, 2, 5);
+        JispTier.enabled = false; // the interpreters are what is measured, not what tiering compiles
+
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%,d evaluations of %s a round, best of %d rounds%n", reps, CALL, rounds);
+        double single = 0;
+        for (int n = 1; n <= threads; n++) {
+            double rate = run(n, reps, rounds);
+            if (n == 1)
+                single = rate;
+            System.out.printf("%3d threads: %10.1f evals/s, %5.2fx one thread%n", n, rate, rate / single);
+        }
+    }
+
+    // evaluations per second of n threads together, each at the rate of its best round
+    private static double run(int n, long reps, int rounds) throws InterruptedException {
+        DoubleAdder total = new DoubleAdder();
+        CyclicBarrier start = new CyclicBarrier(n);
+        Thread[] workers = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            workers[i] = JispBenchmark.startOnLargeStack(() -> {
+                total.add(reps * 1e9 / work(start, reps, rounds));
+            }, "jisp-" + i);
+        }
+        for (Thread worker : workers)
+            worker.join();
+        return total.sum();
+    }
+
+    private static long work(CyclicBarrier start, long reps, int rounds) {
+        JispInterp interp = JispBenchmark.load(PROGRAM);
+        JispBenchmark.best(interp, CALL, "2584", 200, 1); // warm up before the clock starts
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            try {
+                start.await();
+            } catch (Exception ex) {
+                return Long.MAX_VALUE;
+            }
+            best = Math.min(best, JispBenchmark.best(interp, CALL, "2584", reps, 1));
+        }
+        return best;
+    }
+}
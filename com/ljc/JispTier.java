@@ -0,0 +1,179 @@
+package com.ljc;
+
+import com.ljc.JispCompiler.CompileFlags;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class JispTier {
+
+    /* Tiered execution: a DEFUN function starts out interpreted, and once it has been called
+       invocationThreshold times, or its DOTIMES loops have gone round backEdgeThreshold times,
+       it is handed to JispCompiler on a background thread. The interpreter keeps running it
+       until the compiled code is installed on the JispFunction, and from then on calls the
+       compiled code instead. A function that fails to compile stays interpreted.
+
+       Compiled code has no tail calls, so only functions that stay within what the compiler
+       takes on itself are tiered up: IF, COND, AND, OR, LET, PROGN, DOTIMES, SET, QUOTE,
+       array access, numeric builtins, EQ, EQL and EQUAL, and calls to other functions, none
+       of them in tail position.
+
+       On by default, and turned off with -no-tier. Compiled code is faster on ordinary code,
+       as it calls JispNumbers directly and passes values straight to other compiled
+       functions. A function must give the same results before and after it is compiled, so
+       only the builtins listed below, which evaluate each argument once as compiled code
+       expects, let it tier up; any other keeps it interpreted. The benchmarks that measure
+       the interpreter turn tiering off. */
+
+    static boolean enabled = true;
+    static int invocationThreshold = 1000;
+    static int backEdgeThreshold = 100000;
+
+    private static final AtomicInteger requested = new AtomicInteger();
+    private static final AtomicInteger compiled = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    private static final AtomicInteger skipped = new AtomicInteger();
+
+    // builtins that evaluate each argument once, so compiled code passing them values gets the same results
+    private static final HashSet<String> evaluating = new HashSet<>(Arrays.asList(
+            "jisp_add", "jisp_subtract", "jisp_mult", "jisp_divide", "jisp_equals", "jisp_negateequals",
+            "jisp_lessthan", "jisp_morethan", "jisp_lessthanorequal", "jisp_morethanorequal",
+            "jisp_oneplus", "jisp_oneminus", "MAX", "MIN", "MOD", "SQRT", "SIN", "COS", "ZEROP",
+            "NOT", "NULL", "EQ", "EQL", "EQUAL", "AREF", "LENGTH"));
+
+    private static final ExecutorService compiler = Executors.newSingleThreadExecutor(task -> {
+        Thread t = new Thread(task, "jisp-compiler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // called on the interpreter's thread when one of func's counters reaches its threshold
+    static void request(JispFunction func) {
+        if (!enabled || !func.markTierRequested())
+            return;
+        if (!compilable(func)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        requested.incrementAndGet();
+        compiler.execute(() -> compile(func));
+    }
+
+    private static void compile(JispFunction func) {
+        // the compiler installs the code on func itself when it succeeds
+        Object result = new JispCompiler().compile(func.getName().getName(), func, EnumSet.of(CompileFlags.QUIET));
+        if (result == null)
+            failed.incrementAndGet();
+        else
+            compiled.incrementAndGet();
+    }
+
+    static int getCompiledCount() {
+        return compiled.get();
+    }
+
+    static String report() {
+        return String.format("tiering: %d functions compiled, %d failed, %d pending, %d not compilable",
+                compiled.get(), failed.get(), requested.get() - compiled.get() - failed.get(), skipped.get());
+    }
+
+    static boolean compilable(JispFunction func) {
+        if ((func.getName() == null) || (func.getClosure() != null))
+            return false;
+        return compilable(func.getFunction(), func.getAllParameters(), true);
+    }
+
+    private static boolean compilable(Object form, List<JispSymbol> params, boolean tail) {
+        if ((form instanceof Long) || (form instanceof Double) || (form instanceof String) ||
+                (form instanceof JispSymbol))
+            return true;
+        if (!(form instanceof JispCons) || !(((JispCons) form).car() instanceof JispSymbol))
+            return false;
+
+        JispCons list = (JispCons) form;
+        JispSymbol head = (JispSymbol) list.car();
+        switch (head.getName()) {
+            case "IF":
+                return (list.length() == 4) &&
+                        compilable(list.nth(1), params, false) &&
+                        compilable(list.nth(2), params, tail) &&
+                        compilable(list.nth(3), params, tail);
+            case "PROGN":
+                for (int i = 1; i < list.length(); i++) {
+                    if (!compilable(list.nth(i), params, tail && (i == list.length() - 1)))
+                        return false;
+                }
+                return list.length() > 1;
+            case "COND":
+                for (Object x : new JispArguments(list)) {
+                    if (!(x instanceof JispCons) || (((JispCons) x).length() > 2))
+                        return false;
+                    JispCons clause = (JispCons) x;
+                    if (!compilable(clause.car(), params, false) ||
+                            ((clause.length() == 2) && !compilable(clause.nth(1), params, tail)))
+                        return false;
+                }
+                return true;
+            case "AND":
+            case "OR":
+                for (int i = 1; i < list.length(); i++) {
+                    if (!compilable(list.nth(i), params, tail && (i == list.length() - 1)))
+                        return false;
+                }
+                return true;
+            case "LET":
+                // the compiler keeps the bindings in locals, values and body as anywhere else
+                if ((list.length() != 3) || !((list.nth(1) == null) || (list.nth(1) instanceof JispCons)))
+                    return false;
+                for (Object binding : JispCons.elements(list.nth(1))) {
+                    if ((binding instanceof JispCons) ?
+                            (!(((JispCons) binding).car() instanceof JispSymbol) ||
+                                    !compilable(((JispCons) binding).nth(1), params, false)) :
+                            !(binding instanceof JispSymbol))
+                        return false;
+                }
+                return compilable(list.nth(2), params, tail);
+            case "DOTIMES":
+                if ((list.length() < 3) || !(list.nth(1) instanceof JispCons))
+                    return false;
+                JispCons spec = (JispCons) list.nth(1);
+                if ((spec.length() != 2) || !(spec.nth(0) instanceof JispSymbol) || params.contains(spec.nth(0)) ||
+                        !compilable(spec.nth(1), params, false))
+                    return false;
+                return arguments(list, 2, params);
+            case "SET":
+                // the compiler sets the global itself, as the builtin does
+                return (list.length() == 3) && (list.nth(1) instanceof JispSymbol) &&
+                        compilable(list.nth(2), params, false);
+            case "QUOTE":
+                return list.length() == 2;
+            case "THE":
+                // the compiler only unboxes the types it knows, and leaves the rest to the builtin
+                return (list.length() == 3) && compilable(list.nth(2), params, false);
+            case "SETF":
+                // only array elements, which the compiler stores directly
+                return (list.length() == 3) && (list.nth(1) instanceof JispCons) &&
+                        (((JispCons) list.nth(1)).car() == JispSymbol.intern("AREF")) &&
+                        arguments((JispCons) list.nth(1), 1, params) &&
+                        compilable(list.nth(2), params, false);
+            default:
+                if (head.getBuiltin() != null)
+                    return evaluating.contains(head.getJavaName()) && arguments(list, 1, params);
+                // a call to a user function, which compiled code cannot make as a tail call
+                return !tail && arguments(list, 1, params);
+        }
+    }
+
+    private static boolean arguments(JispCons list, int from, List<JispSymbol> params) {
+        for (int i = from; i < list.length(); i++) {
+            if (!compilable(list.nth(i), params, false))
+                return false;
+        }
+        return true;
+    }
+}
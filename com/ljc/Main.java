@@ -1,17 +1,15 @@
 package com.ljc;
 
 import org.jline.reader.*;
-import org.jline.reader.impl.DefaultParser;
 import org.jline.reader.impl.completer.AggregateCompleter;
 import org.jline.reader.impl.completer.StringsCompleter;
 import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 
@@ -19,26 +17,66 @@ public class Main {
 
     static boolean running;
 
+    /* the interpreter recurses on the Java stack for every Lisp call,
+       so it runs on a thread with room for deep recursion */
+    private static final long STACK_SIZE = 1L << 30;
+
     static {
         running = true;
     }
 
-    public static void main(String... args) {
+    public static void main(String... args) throws InterruptedException {
+        Thread jisp = new Thread(null, () -> run(args), "jisp", STACK_SIZE);
+        jisp.start();
+        jisp.join();
+    }
+
+    private static void run(String... options) {
         Object result = null;
         String line;
         JispInterp interp = new JispInterp();
         JispParser parser = new JispParser();
         InputStream instr;
 
-        if (args.length == 1) { // process Lisp file
+        /* startup options:
+           -tier                  compile hot functions automatically, the default
+           -no-tier               never compile functions automatically
+           -compile-threshold n   compile a function after n calls
+           -loop-threshold n      compile a function after n iterations of its loops
+           -tier-stats            print how many functions were compiled on exit
+           -no-analyse            evaluate function bodies without analysing them first */
+        boolean stats = false;
+        ArrayList<String> args = new ArrayList<>();
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "-tier":
+                    JispTier.enabled = true;
+                    break;
+                case "-no-tier":
+                    JispTier.enabled = false;
+                    break;
+                case "-compile-threshold":
+                    JispTier.invocationThreshold = Integer.parseInt(options[++i]);
+                    break;
+                case "-loop-threshold":
+                    JispTier.backEdgeThreshold = Integer.parseInt(options[++i]);
+                    break;
+                case "-tier-stats":
+                    stats = true;
+                    break;
+                case "-no-analyse":
+                    JispInterp.analyse = false;
+                    break;
+                default:
+                    args.add(options[i]);
+            }
+        }
+
+        if (args.size() == 1) { // process Lisp file
             try {
-                line = new String(Files.readAllBytes(Paths.get(args[0])));
-                ArrayList items = (ArrayList) parser.interpret(line);
-                for (Object i : items) {
-                    result = interp.eval(i);
-                }
-            } catch (FileNotFoundException f) {
-                System.out.println("could not open " + args[0] + ", " + f.getMessage());
+                interp.load(Paths.get(args.get(0)));
+            } catch (NoSuchFileException f) {
+                System.out.println("could not open " + args.get(0) + ", " + f.getMessage());
             } catch (IOException ioex) {
                 System.err.println("Error reading file: " + ioex.getMessage());
             }
@@ -58,14 +96,9 @@ public class Main {
                 }
                 StringsCompleter builtin = new StringsCompleter(builtin_names);
                 Completer keywords = (lineReader, parsedLine, list) -> {
-                    for (Object x : interp.getSymbols().keySet()) list.add(new Candidate(((String) x).toLowerCase()));
-                };
-                Parser lispparser = new DefaultParser() {
-                    @Override
-                    public boolean isDelimiterChar(CharSequence buffer, int pos) {
-                        return (buffer.charAt(pos) == '(') || (buffer.charAt(pos) == ')') || super.isDelimiterChar(buffer, pos);
-                    }
+                    for (String x : interp.getFunctionNames()) list.add(new Candidate(x.toLowerCase()));
                 };
+                Parser lispparser = new JispReplParser(); // asks for more lines until the forms are finished
                 LineReader cr = LineReaderBuilder.builder()
                         .terminal(tr)
                         .parser(lispparser)
@@ -77,10 +110,7 @@ public class Main {
                 ArrayList items = (ArrayList) parser.interpret(line);
                 for (Object i : items) {
                     result = interp.eval(i);
-                    if (result != null)
-                        System.out.println(result);
-                    else
-                        System.out.println("NIL");
+                    System.out.println(JispCons.print(result));
                 }
                 while (running) {
                     line = cr.readLine("jisp> ");
@@ -88,15 +118,14 @@ public class Main {
                     items = (ArrayList) parser.interpret(line);
                     for (Object i : items) {
                         result = interp.eval(i);
-                        if (result != null)
-                            System.out.println(result);
-                        else
-                            System.out.println("NIL");
+                        System.out.println(JispCons.print(result));
                     }
                 }
             } catch (IOException ex) {
                 System.err.println("Error opening console: " + ex.getMessage());
             }
         }
+        if (stats)
+            System.err.println(JispTier.report());
     }
 }
\ No newline at end of file
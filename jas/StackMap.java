@@ -56,7 +56,10 @@ public class StackMap
   public int size(ClassEnv e, CodeAttr ce)
   {
     try {
-      if(java6) shellSort(ce);
+      if(java6) {
+        shellSort(ce);
+        dropDuplicates(ce);
+      }
       return write(e, ce, null);
     } catch(IOException ex) {
       System.err.println("UNEXPECTED IO EXCEPTION");
@@ -104,6 +107,16 @@ public class StackMap
     return (2 + 4) + len;
   }
 
+  // labels placed together give several frames at one offset, which
+  // describe the same state; only one of them may be written
+  private void dropDuplicates(CodeAttr ce) throws jasError
+  {
+    for(int i = frames.size() - 1; i > 0; i--)
+      if(((VerifyFrame)frames.elementAt(i)).getOffset(ce) ==
+         ((VerifyFrame)frames.elementAt(i - 1)).getOffset(ce))
+        frames.removeElementAt(i);
+  }
+
   // sort (method of Shell) frames by offset (before writing)
   // used for StackMapFrameAttr mode.
   private void shellSort(CodeAttr ce) throws jasError
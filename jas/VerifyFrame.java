@@ -111,10 +111,9 @@ public class VerifyFrame
         boolean can_compact = true;
         int prev_size = 0;
         if(prev == null) { // first record
-          if(stack_size == 0) {
-            if(locals_size > (APPEND_FRAME_S0_max - SAME_FRAME_S0))
-              can_compact = false;
-          } else if(locals_size != 0)
+          // compacted frames are relative to the method's arguments, which
+          // are not known here, so only a frame with no locals is compacted
+          if(locals_size != 0)
               can_compact = false;
         } else { // not first record
           int cmpcn = locals_size;